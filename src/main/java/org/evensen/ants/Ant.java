@@ -3,6 +3,23 @@ package org.evensen.ants;
 public interface Ant {
     public void move(final AntWorld w);
 
+    /**
+     * Like {@code move(w)}, but lets the ant interact with the ants around it.
+     *
+     * @param w          The world to move in.
+     * @param neighbours Ants near this one, as of the start of the current epoch.
+     */
+    public default void move(final AntWorld w, final AntNeighbourhood neighbours) {
+        move(w);
+    }
+
+    /**
+     * @return A number identifying this ant within its colony, or a negative value if it has none.
+     */
+    public default int getId() {
+        return -1;
+    }
+
     public float getDirection();
 
     public Position getPosition();
@@ -1,35 +1,83 @@
 package org.evensen.ants;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.SplittableRandom;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 public class AntColony {
+    private static final int COMPACTION_INTERVAL = 50;
+    private static final int GRID_CELL_SIZE = 4;
+    private static final int MAX_GRID_SIDE = 4096; // Larger worlds get a grid around their nests.
     private final List<Ant> ants;
-    private long accTime;
+    private final List<Ant> deadAnts;
+    private final AntGrid grid;
+    private final PellAnt.Brood brood;
+    private TrajectoryRecorder trajectories;
     private int epochs;
-    private final Supplier<PellAnt> createAnt;
 
     public AntColony(final int ants, final float pheromoneRate, final AntWorld w) {
+        this(ants, pheromoneRate, w, 1L, PellAnt.Tuning.DEFAULT);
+    }
+
+    /**
+     * @param seed   Seeds the spawn positions and the ants' counter-based generators, which use the ant id as stream.
+     * @param tuning Shared by all ants of the colony.
+     */
+    public AntColony(final int ants, final float pheromoneRate, final AntWorld w, final long seed,
+                     final PellAnt.Tuning tuning) {
         this.ants = new ArrayList<>();
-        final SplittableRandom rng = new SplittableRandom(Hasher.hash(1));
-        this.createAnt = new Supplier<PellAnt>() {
+        this.deadAnts = new ArrayList<>();
+        this.grid = createGrid(w);
+        this.brood = new PellAnt.Brood(Hasher.hash(seed, 2L));
+        final SplittableRandom rng = new SplittableRandom(Hasher.hash(seed));
+        final List<Position> nests = w.getNests();
+        final Supplier<PellAnt> createAnt = new Supplier<PellAnt>() {
+            private int created;
+
             @Override
             public PellAnt get() {
-                return new PellAnt(new Position(
-                        w.getWidth() - 5, (float) (w.getHeight() / 2 + rng.nextGaussian())),
-                        pheromoneRate);
+                // Spread the ants evenly over the nests, a bit inside the world.
+                final int id = this.created++;
+                final Position nest = nests.get(id % nests.size());
+                final float x = GraphicsMath.bound(5, w.getWidth() - 5, nest.getX());
+                final float y = GraphicsMath.bound(0, w.getHeight() - 1, (int) nest.getY());
+                return new PellAnt(new Position(x, (float) (y + rng.nextGaussian())),
+                        pheromoneRate, PellAnt.Steering.GRADIENT, tuning, id, AntColony.this.brood);
             }
         };
         for (int i = 0; i < ants; i++) {
-            this.ants.add(this.createAnt.get());
+            this.ants.add(createAnt.get());
         }
+        this.grid.rebuild(this.ants);
+    }
+
+    // An empty colony, to be filled by readState.
+    private AntColony(final AntWorld w, final PellAnt.Brood brood) {
+        this.ants = new ArrayList<>();
+        this.deadAnts = new ArrayList<>();
+        this.grid = createGrid(w);
+        this.brood = brood;
+    }
+
+    private static AntGrid createGrid(final AntWorld w) {
+        final int width = Math.min(MAX_GRID_SIDE, w.getWidth());
+        final int height = Math.min(MAX_GRID_SIDE, w.getHeight());
+        float x = 0.0f;
+        float y = 0.0f;
+        for (final Position nest : w.getNests()) {
+            x += nest.getX() / w.getNests().size();
+            y += nest.getY() / w.getNests().size();
+        }
+        final int originX = Math.max(0, Math.min(w.getWidth() - width, (int) x - width / 2));
+        final int originY = Math.max(0, Math.min(w.getHeight() - height, (int) y - height / 2));
+        return new AntGrid(originX, originY, width, height, GRID_CELL_SIZE);
     }
 
     public void updateAnts(final AntWorld w) {
-        final long startTime = System.nanoTime();
         synchronized (this) {
             this.ants.sort((o1, o2) -> {
                 final float x1 = o1.getPosition().getY();
@@ -42,16 +90,181 @@ public class AntColony {
                     return 0;
                 }
             });
-            this.ants.forEach(a -> a.move(w));
+            // The grid still holds last epoch's positions and its index is not touched until all ants have moved.
+            // Its density counts are not read during the moves, so the new ones are accumulated on the way.
+            this.grid.clearCounts();
+            for (final Ant a : this.ants) {
+                a.move(w, this.grid);
+                this.grid.count(a);
+            }
+            if (0 == (this.epochs + 1) % COMPACTION_INTERVAL) {
+                compactDeadAnts(w);
+            }
+            this.grid.rebuildFromCounts(this.ants);
+            if (null != this.trajectories) {
+                this.trajectories.record(this.epochs + 1, this.ants, this.deadAnts);
+            }
         }
-        this.accTime += System.nanoTime() - startTime;
         this.epochs++;
-        if (0 == this.epochs % 100) {
-            System.out.println("Time per epoch: " + (this.accTime / (double) this.epochs / 1_000_000_000) + " s");
+    }
+
+    /**
+     * Records every ant's position, heading and state at the end of each following update, numbered from 1 like
+     * the epochs of a {@code Simulation}. {@code null} stops recording; closing the recorder is up to the caller.
+     */
+    public void setTrajectoryRecorder(final TrajectoryRecorder recorder) {
+        this.trajectories = recorder;
+    }
+
+    /**
+     * Moves dead ants out of the update set, leaving them as carcasses in {@code w}.
+     */
+    private void compactDeadAnts(final AntWorld w) {
+        int live = 0;
+        for (int i = 0; i < this.ants.size(); i++) {
+            final Ant a = this.ants.get(i);
+            if (a.isDead()) {
+                this.deadAnts.add(a);
+                w.addDeadAnt(a.getPosition());
+            } else {
+                this.ants.set(live++, a);
+            }
         }
+        this.ants.subList(live, this.ants.size()).clear();
     }
 
+    /**
+     * Calls {@code action} for every live ant that was within {@code radius} of {@code center} at the end of the
+     * last update. Costs time proportional to the number of ants near {@code center}, not to the colony size.
+     */
+    public void forEachAntWithin(final Position center, final float radius, final Consumer<Ant> action) {
+        synchronized (this) {
+            this.grid.forEachWithin(center, radius, action);
+        }
+    }
+
+    /**
+     * Copies the ant density at the end of the last update, indexed as {@code row * getDensityColumns() + column}.
+     *
+     * @param ants     Receives the number of live ants per cell.
+     * @param carrying Receives the number of food carrying ants per cell. The rest are foraging.
+     */
+    public void copyDensity(final int[] ants, final int[] carrying) {
+        synchronized (this) {
+            this.grid.copyCounts(ants, carrying);
+        }
+    }
+
+    /**
+     * @return The left edge of the density map, which may cover only part of a large world.
+     */
+    public int getDensityOriginX() {
+        return this.grid.getOriginX();
+    }
+
+    /**
+     * @return The top edge of the density map.
+     */
+    public int getDensityOriginY() {
+        return this.grid.getOriginY();
+    }
+
+    public int getDensityColumns() {
+        return this.grid.getColumns();
+    }
+
+    public int getDensityRows() {
+        return this.grid.getRows();
+    }
+
+    /**
+     * @return The side of a density cell, in world units.
+     */
+    public int getDensityCellSize() {
+        return this.grid.getCellSize();
+    }
+
+    /**
+     * @return The ants that are updated every epoch. Ants that died recently may still be among them.
+     */
     public List<Ant> getAnts() {
         return Collections.unmodifiableList(this.ants);
     }
+
+    /**
+     * @return The dead ants that no longer take part in the updates.
+     */
+    public List<Ant> getDeadAnts() {
+        return Collections.unmodifiableList(this.deadAnts);
+    }
+
+    /**
+     * @return A digest of every ant's id, position, direction and state, in update order. Two colonies with the
+     * same digest have, for all practical purposes, the same ants in the same places.
+     */
+    public long computeDigest() {
+        long h = this.ants.size();
+        for (final Ant a : this.ants) {
+            final Position p = a.getPosition();
+            final long flags = (a.hasFood() ? 1 : 0) | (a.isDead() ? 2 : 0);
+            h = Hasher.mix(h, (long) a.getId() << 2 | flags);
+            h = Hasher.mix(h, (long) Float.floatToRawIntBits(p.getX()) << 32
+                    | Float.floatToRawIntBits(p.getY()) & 0xFFFFFFFFL);
+            h = Hasher.mix(h, Float.floatToRawIntBits(a.getDirection()));
+        }
+        return Hasher.mix(h, this.deadAnts.size());
+    }
+
+    /**
+     * @return The number of bytes {@code writeState} will write.
+     */
+    int getStateSize() {
+        return 3 * Integer.BYTES + Long.BYTES + (this.ants.size() + this.deadAnts.size()) * PellAnt.STATE_BYTES
+                + this.ants.size();
+    }
+
+    /**
+     * Writes the seed of the ants' generators, the ants, in update order, and which of them the neighbour grid
+     * holds. Ants killed since the grid was built are still in it, so that has to be recorded rather than derived.
+     * Only colonies of {@code PellAnt}s can be written.
+     */
+    void writeState(final ByteBuffer b) {
+        b.putLong(this.brood.seed());
+        b.putInt(this.epochs);
+        b.putInt(this.ants.size());
+        b.putInt(this.deadAnts.size());
+        int maxId = 0;
+        for (final Ant a : this.ants) {
+            maxId = Math.max(maxId, a.getId());
+        }
+        final boolean[] inGrid = new boolean[maxId + 1];
+        this.grid.forEachAnt(a -> inGrid[a.getId()] = true);
+        for (final Ant a : this.ants) {
+            ((PellAnt) a).writeState(b);
+            b.put((byte) (inGrid[a.getId()] ? 1 : 0));
+        }
+        for (final Ant a : this.deadAnts) {
+            ((PellAnt) a).writeState(b);
+        }
+    }
+
+    /**
+     * Recreates a colony written by {@code writeState}, including its neighbour grid and density counts.
+     */
+    static AntColony readState(final ByteBuffer b, final AntWorld w, final PellAnt.Tuning tuning) {
+        final AntColony colony = new AntColony(w, new PellAnt.Brood(b.getLong()));
+        colony.epochs = b.getInt();
+        final int live = b.getInt();
+        final int dead = b.getInt();
+        final boolean[] inGrid = new boolean[live];
+        for (int i = 0; i < live; i++) {
+            colony.ants.add(PellAnt.readState(b, tuning, colony.brood));
+            inGrid[i] = 0 != b.get();
+        }
+        for (int i = 0; i < dead; i++) {
+            colony.deadAnts.add(PellAnt.readState(b, tuning, colony.brood));
+        }
+        colony.grid.rebuild(colony.ants, inGrid);
+        return colony;
+    }
 }
@@ -0,0 +1,242 @@
+package org.evensen.ants;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A uniform grid over the world, bucketing live ants by position for radius queries.
+ * <p>
+ * The grid is rebuilt from scratch with a counting sort, which is O(n) and reuses its arrays between rebuilds.
+ * Positions are copied at rebuild time, so queries see the ants where they were then. Queries only read, so any
+ * number of threads may query concurrently as long as no rebuild is running.
+ * </p>
+ * The per-cell counts of the counting sort double as an ant density map. They can be accumulated with
+ * {@code count} while the ants are being updated anyway, in which case {@code rebuildFromCounts} skips the
+ * counting pass.
+ */
+public final class AntGrid implements AntNeighbourhood {
+    private final int originX;
+    private final int originY;
+    private final int cellSize;
+    private final int columns;
+    private final int rows;
+    private final int[] cellStart;
+    private final int[] antCounts;
+    private final int[] carryingCounts;
+    private Ant[] ants;
+    private float[] xs;
+    private float[] ys;
+
+    /**
+     * @param width    World width.
+     * @param height   World height.
+     * @param cellSize Side of each (square) grid cell, in world units.
+     */
+    public AntGrid(final int width, final int height, final int cellSize) {
+        this(0, 0, width, height, cellSize);
+    }
+
+    /**
+     * A grid over part of the world only, for worlds too large to cover. Ants outside of it are bucketed into its
+     * border cells, which keeps queries correct but makes them slower there.
+     *
+     * @param originX Left edge of the covered part.
+     * @param originY Top edge of the covered part.
+     */
+    public AntGrid(final int originX, final int originY, final int width, final int height, final int cellSize) {
+        this.originX = originX;
+        this.originY = originY;
+        this.cellSize = cellSize;
+        this.columns = (width + cellSize - 1) / cellSize;
+        this.rows = (height + cellSize - 1) / cellSize;
+        this.cellStart = new int[this.columns * this.rows + 1];
+        this.antCounts = new int[this.columns * this.rows];
+        this.carryingCounts = new int[this.columns * this.rows];
+        this.ants = new Ant[0];
+        this.xs = new float[0];
+        this.ys = new float[0];
+    }
+
+    private int column(final float x) {
+        return Math.max(0, Math.min(this.columns - 1, (int) Math.floor((x - this.originX) / this.cellSize)));
+    }
+
+    private int row(final float y) {
+        return Math.max(0, Math.min(this.rows - 1, (int) Math.floor((y - this.originY) / this.cellSize)));
+    }
+
+    private int cell(final Position p) {
+        return row(p.getY()) * this.columns + column(p.getX());
+    }
+
+    /**
+     * Rebuilds the grid from the live ants in {@code colony}. Dead ants are left out.
+     */
+    public void rebuild(final List<Ant> colony) {
+        clearCounts();
+        for (final Ant a : colony) {
+            count(a);
+        }
+        rebuildFromCounts(colony);
+    }
+
+    /**
+     * Rebuilds the grid from exactly those ants of {@code colony} whose flag in {@code members} is set, dead or
+     * alive. Used to restore a grid that was built before some of its ants died.
+     */
+    public void rebuild(final List<Ant> colony, final boolean[] members) {
+        clearCounts();
+        for (int i = 0; i < colony.size(); i++) {
+            if (members[i]) {
+                final Ant a = colony.get(i);
+                final int c = cell(a.getPosition());
+                this.antCounts[c]++;
+                if (a.hasFood()) {
+                    this.carryingCounts[c]++;
+                }
+            }
+        }
+        scatter(colony, members);
+    }
+
+    /**
+     * Starts a new density count.
+     */
+    public void clearCounts() {
+        Arrays.fill(this.antCounts, 0);
+        Arrays.fill(this.carryingCounts, 0);
+    }
+
+    /**
+     * Adds {@code a} to the density count at its current position, unless it is dead.
+     */
+    public void count(final Ant a) {
+        if (!a.isDead()) {
+            final int c = cell(a.getPosition());
+            this.antCounts[c]++;
+            if (a.hasFood()) {
+                this.carryingCounts[c]++;
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the grid from {@code colony}, whose live ants must all have been counted, where they are now, since
+     * the last {@code clearCounts}.
+     */
+    public void rebuildFromCounts(final List<Ant> colony) {
+        scatter(colony, null);
+    }
+
+    // Sorts the members, or all live ants if there is no member list, into the cells counted for them.
+    private void scatter(final List<Ant> colony, final boolean[] members) {
+        if (this.ants.length < colony.size()) {
+            this.ants = new Ant[colony.size()];
+            this.xs = new float[colony.size()];
+            this.ys = new float[colony.size()];
+        }
+
+        // Prefix sum of the counts gives each cell's start.
+        this.cellStart[0] = 0;
+        for (int c = 0; c < this.antCounts.length; c++) {
+            this.cellStart[c + 1] = this.cellStart[c] + this.antCounts[c];
+        }
+
+        // Scatter, using the starts as insertion cursors; afterwards each one has advanced to the next cell's start.
+        for (int k = 0; k < colony.size(); k++) {
+            final Ant a = colony.get(k);
+            if (null == members ? !a.isDead() : members[k]) {
+                final Position p = a.getPosition();
+                final int i = this.cellStart[cell(p)]++;
+                this.ants[i] = a;
+                this.xs[i] = p.getX();
+                this.ys[i] = p.getY();
+            }
+        }
+        for (int c = this.cellStart.length - 1; 0 < c; c--) {
+            this.cellStart[c] = this.cellStart[c - 1];
+        }
+        this.cellStart[0] = 0;
+    }
+
+    /**
+     * @return The left edge of the covered part of the world.
+     */
+    public int getOriginX() {
+        return this.originX;
+    }
+
+    /**
+     * @return The top edge of the covered part of the world.
+     */
+    public int getOriginY() {
+        return this.originY;
+    }
+
+    public int getColumns() {
+        return this.columns;
+    }
+
+    public int getRows() {
+        return this.rows;
+    }
+
+    public int getCellSize() {
+        return this.cellSize;
+    }
+
+    /**
+     * Copies the density counts of the last rebuild, indexed as {@code row * getColumns() + column}.
+     *
+     * @param ants     Receives the number of live ants per cell.
+     * @param carrying Receives the number of food carrying ants per cell. The rest are foraging.
+     */
+    public void copyCounts(final int[] ants, final int[] carrying) {
+        System.arraycopy(this.antCounts, 0, ants, 0, this.antCounts.length);
+        System.arraycopy(this.carryingCounts, 0, carrying, 0, this.carryingCounts.length);
+    }
+
+    /**
+     * Calls {@code action} for every ant in the grid, cell by cell.
+     */
+    public void forEachAnt(final Consumer<Ant> action) {
+        for (int i = 0; i < this.cellStart[this.cellStart.length - 1]; i++) {
+            action.accept(this.ants[i]);
+        }
+    }
+
+    /**
+     * Calls {@code action} for every ant within {@code radius} of {@code center}.
+     * Only the cells overlapping the query circle are visited.
+     */
+    public void forEachWithin(final Position center, final float radius, final Consumer<Ant> action) {
+        forEachNeighbour(center, radius, (ant, dx, dy, distanceSquared) -> action.accept(ant));
+    }
+
+    @Override
+    public int forEachNeighbour(final Position center, final float radius, final Visitor visitor) {
+        final float cx = center.getX();
+        final float cy = center.getY();
+        final float r2 = radius * radius;
+        final int minColumn = column(cx - radius);
+        final int maxColumn = column(cx + radius);
+        final int maxRow = row(cy + radius);
+        int visited = 0;
+        for (int row = row(cy - radius); row <= maxRow; row++) {
+            final int rowOffset = row * this.columns;
+            // Ants in neighbouring cells of a row are stored contiguously.
+            final int end = this.cellStart[rowOffset + maxColumn + 1];
+            for (int i = this.cellStart[rowOffset + minColumn]; i < end; i++) {
+                final float dx = this.xs[i] - cx;
+                final float dy = this.ys[i] - cy;
+                final float d2 = dx * dx + dy * dy;
+                if (d2 <= r2) {
+                    visitor.visit(this.ants[i], dx, dy, d2);
+                    visited++;
+                }
+            }
+        }
+        return visited;
+    }
+}
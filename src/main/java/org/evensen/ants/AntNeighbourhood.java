@@ -0,0 +1,30 @@
+package org.evensen.ants;
+
+/**
+ * Answers "which ants are within r of here" in time proportional to the number of ants nearby.
+ * Implementations must allow concurrent queries, so that ants updated in parallel can use them.
+ */
+public interface AntNeighbourhood {
+    /**
+     * Receives the ants found by a neighbour query. Keep an instance around instead of creating one per query in
+     * order to stay allocation free.
+     */
+    @FunctionalInterface
+    interface Visitor {
+        /**
+         * @param ant             The neighbour.
+         * @param dx              The neighbour's x minus the query center's x.
+         * @param dy              The neighbour's y minus the query center's y.
+         * @param distanceSquared {@code dx * dx + dy * dy}.
+         */
+        void visit(Ant ant, float dx, float dy, float distanceSquared);
+    }
+
+    /**
+     * Calls {@code visitor} for every ant within {@code radius} of {@code center}, including any ant at
+     * {@code center} itself.
+     *
+     * @return The number of ants visited.
+     */
+    int forEachNeighbour(Position center, float radius, Visitor visitor);
+}
@@ -2,31 +2,11 @@ package org.evensen.ants;
 
 /**
  * A description of a world for ants using two different types of pheromones.
+ * <p>
+ * The queries are in {@code AntWorldView}; this adds the ways in which ants and the simulation change the world.
+ * </p>
  */
-public interface AntWorld {
-    /**
-     * Gives the width of the world.
-     *
-     * @return world width.
-     */
-    int getWidth();
-
-    /**
-     * Gives the height of the world.
-     *
-     * @return world height.
-     */
-    int getHeight();
-
-    /**
-     * Should return {@code true} for positions where there's an obstacle.
-     * Highly advisable: return {@code true} for all positions that are off the map, i.e.
-     *
-     * @return true if there's an obstacle at {@code p}, {@code false} otherwise.
-     * @code x < 0 || y < 0 || x >= width || y >= height} where {@code x = (int) p.getX(); y = (int) p.getY()}
-     */
-    boolean isObstacle(Position p);
-
+public interface AntWorld extends AntWorldView {
     /**
      * Increases the foraging pheromone level at the cell closest to {@code p}.
      * Closest is in this case defined as "having the indices of {@code <(int) p.getX(), (int) p.getY()>}"
@@ -63,44 +43,12 @@ public interface AntWorld {
     void pickUpFood(Position p);
 
     /**
-     * Possible future extension -- ants should avoid other dead ants.
-     */
-    float getDeadAntCount(Position p);
-
-    /**
-     * Gives the current foraging pheromone level closest to {@code p}.
-     * Closest is in this case defined as "having the indices of {@code <(int) p.getX(), (int) p.getY()>}"
-     *
-     * @param p The position to get the foraging pheromone level for.
-     * @return The current foraging pheromone level closest to {@code p}.
-     */
-    float getForagingStrength(Position p);
-
-    /**
-     * Gives the current food pheromone level closest to {@code p}.
-     * Closest is in this case defined as "having the indices of {@code <(int) p.getX(), (int) p.getY()>}"
+     * Notifies the world that an ant has died and left its carcass at {@code p}.
      *
-     * @param p The position to get the food pheromone level for.
-     * @return The current food pheromone level closest to {@code p}.
-     */
-    float getFoodStrength(Position p);
-
-    /**
-     * @param p The position to check for food.
-     * @return {@code true} if the position contains food, {@code false} otherwise.
-     */
-    boolean containsFood(Position p);
-
-    /**
-     * @return home much food has been delivered by way of calling {@code dropFood()}.
-     */
-    long getFoodCount();
-
-    /**
-     * @param p The position to check for homeness.
-     * @return {@code true} if the {@code p} could be considered to be within an ant-home, {@code false} otherwise.
+     * @param p The position of the carcass.
      */
-    boolean isHome(Position p);
+    default void addDeadAnt(Position p) {
+    }
 
     /**
      * Should let pheromones evaporate as well as spread over the world.
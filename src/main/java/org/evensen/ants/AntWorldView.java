@@ -0,0 +1,181 @@
+package org.evensen.ants;
+
+import java.util.List;
+
+/**
+ * The queries of an {@code AntWorld}, which only read it. Renderers take this, so that read-only copies of a world
+ * need not pretend to support the rest.
+ */
+public interface AntWorldView {
+    /**
+     * Gives the width of the world.
+     *
+     * @return world width.
+     */
+    int getWidth();
+
+    /**
+     * Gives the height of the world.
+     *
+     * @return world height.
+     */
+    int getHeight();
+
+    /**
+     * Should return {@code true} for positions where there's an obstacle.
+     * Highly advisable: return {@code true} for all positions that are off the map, i.e.
+     *
+     * @return true if there's an obstacle at {@code p}, {@code false} otherwise.
+     * @code x < 0 || y < 0 || x >= width || y >= height} where {@code x = (int) p.getX(); y = (int) p.getY()}
+     */
+    boolean isObstacle(Position p);
+
+    /**
+     * Possible future extension -- ants should avoid other dead ants.
+     */
+    float getDeadAntCount(Position p);
+
+    /**
+     * Gives the current foraging pheromone level closest to {@code p}.
+     * Closest is in this case defined as "having the indices of {@code <(int) p.getX(), (int) p.getY()>}"
+     *
+     * @param p The position to get the foraging pheromone level for.
+     * @return The current foraging pheromone level closest to {@code p}.
+     */
+    float getForagingStrength(Position p);
+
+    /**
+     * Gives the current food pheromone level closest to {@code p}.
+     * Closest is in this case defined as "having the indices of {@code <(int) p.getX(), (int) p.getY()>}"
+     *
+     * @param p The position to get the food pheromone level for.
+     * @return The current food pheromone level closest to {@code p}.
+     */
+    float getFoodStrength(Position p);
+
+    /**
+     * Gives the mean foraging pheromone level of the {@code 2^level x 2^level} block of cells containing {@code p}.
+     * Level 0 is the same as {@code getForagingStrength(p)}. Coarser levels are only guaranteed to be up to date
+     * directly after {@code dispersePheromones()}.
+     * The default implementation has no coarser levels and always reads the single cell.
+     *
+     * @param p     The position to get the foraging pheromone level for.
+     * @param level The level of detail, where 0 is full resolution.
+     * @return The mean foraging pheromone level around {@code p}.
+     */
+    default float getForagingStrength(Position p, int level) {
+        return getForagingStrength(p);
+    }
+
+    /**
+     * Gives the mean food pheromone level of the {@code 2^level x 2^level} block of cells containing {@code p}.
+     * See {@code getForagingStrength(Position, int)}.
+     *
+     * @param p     The position to get the food pheromone level for.
+     * @param level The level of detail, where 0 is full resolution.
+     * @return The mean food pheromone level around {@code p}.
+     */
+    default float getFoodStrength(Position p, int level) {
+        return getFoodStrength(p);
+    }
+
+    /**
+     * @return The number of pheromone levels of detail available, 1 meaning full resolution only.
+     */
+    default int getPheromoneLevels() {
+        return 1;
+    }
+
+    /**
+     * May be used to skip scanning empty regions.
+     *
+     * @param p      The center of the region.
+     * @param radius Half the side of the square region to check.
+     * @return {@code false} only if neither pheromone is above a negligible level anywhere in the region.
+     */
+    default boolean hasPheromonesNear(Position p, float radius) {
+        return true;
+    }
+
+    /**
+     * Gives the direction of steepest ascent of the weighted pheromone sum
+     * {@code foodWeight * food + foragingWeight * foraging} around {@code p}, as computed during the last
+     * {@code dispersePheromones()}. It may be taken over a neighbourhood of several cells.
+     *
+     * @param p              The position to get the gradient at.
+     * @param foodWeight     Weight of the food pheromone.
+     * @param foragingWeight Weight of the foraging pheromone.
+     * @param minMagnitude   Gradients weaker than this, in change per cell, are considered flat.
+     * @return An angle in {@code [0, TAU)}, or a negative value if the gradient is flat or unknown.
+     */
+    default float getPheromoneGradientAngle(Position p, float foodWeight, float foragingWeight, float minMagnitude) {
+        return -1.0f;
+    }
+
+    /**
+     * @param p The position to check for food.
+     * @return {@code true} if the position contains food, {@code false} otherwise.
+     */
+    boolean containsFood(Position p);
+
+    /**
+     * @return home much food has been delivered by way of calling {@code dropFood()}.
+     */
+    long getFoodCount();
+
+    /**
+     * @param p The position to check for homeness.
+     * @return {@code true} if the {@code p} could be considered to be within an ant-home, {@code false} otherwise.
+     */
+    boolean isHome(Position p);
+
+    /**
+     * @return The centers of the ant homes. Ants are spawned around these.
+     */
+    default List<Position> getNests() {
+        return List.of(new Position(getWidth(), getHeight() / 2.0f));
+    }
+
+    /**
+     * Gives the walking distance from {@code p} to the closest home, going around obstacles.
+     *
+     * @param p The position to measure from.
+     * @return The distance in cells, {@code Float.POSITIVE_INFINITY} if no home can be reached, or a negative
+     * value if this world does not keep track of home distances.
+     */
+    default float getHomeDistance(Position p) {
+        return -1.0f;
+    }
+
+    /**
+     * Gives the direction to walk from {@code p} in order to get closer to home the fastest, going around obstacles.
+     *
+     * @param p The position to get the direction for.
+     * @return An angle in {@code [0, TAU)}, or a negative value if unknown, unreachable or already home.
+     */
+    default float getHomeDirection(Position p) {
+        return -1.0f;
+    }
+
+    /**
+     * Gives the walking distance from {@code p} to the closest food, going around obstacles.
+     * Worlds may stop tracking the distance some way away from any food.
+     *
+     * @param p The position to measure from.
+     * @return The distance in cells, {@code Float.POSITIVE_INFINITY} if no food is within the tracked distance,
+     * or a negative value if this world does not keep track of food distances.
+     */
+    default float getFoodDistance(Position p) {
+        return -1.0f;
+    }
+
+    /**
+     * Gives the direction to walk from {@code p} in order to get closer to food the fastest, going around obstacles.
+     *
+     * @param p The position to get the direction for.
+     * @return An angle in {@code [0, TAU)}, or a negative value if unknown, out of reach or already at food.
+     */
+    default float getFoodDirection(Position p) {
+        return -1.0f;
+    }
+}
@@ -0,0 +1,135 @@
+package org.evensen.ants;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The binary checkpoint file format, and the background thread writing checkpoints.
+ * <p>
+ * A checkpoint is a header followed by the configuration, the simulation counters, the world and the colony, each
+ * written by the class owning the state. Grids are stored column by column, as they are held in memory, so they
+ * are copied in bulk both ways. Files are written to a temporary file first and then moved into place, so a
+ * checkpoint is either complete or absent.
+ * </p>
+ */
+public enum Checkpoint {
+    ;
+    private static final int MAGIC = 0x414E5453; // "ANTS"
+    private static final int VERSION = 6;
+    static final int HEADER_BYTES = 2 * Integer.BYTES;
+    static final int CONFIG_BYTES = 6 * Integer.BYTES + 8 * Float.BYTES + 2 * Long.BYTES;
+
+    private static final ExecutorService WRITER = Executors.newSingleThreadExecutor(r -> {
+        final Thread t = new Thread(r, "checkpoint-writer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static void writeHeader(final ByteBuffer b, final SimulationConfig config) {
+        b.putInt(MAGIC);
+        b.putInt(VERSION);
+        writeConfig(b, config);
+    }
+
+    /**
+     * Writes {@code config} in {@code CONFIG_BYTES} bytes. Shared with the replay log format.
+     */
+    static void writeConfig(final ByteBuffer b, final SimulationConfig config) {
+        b.putInt(config.getWidth());
+        b.putInt(config.getHeight());
+        b.putInt(config.getAnts());
+        b.putInt(config.getFoodSources());
+        b.putFloat(config.getPheromoneRate());
+        b.putLong(config.getEpochs());
+        b.putInt(config.getDispersalInterval());
+        b.putFloat(config.getPheromoneDropoff());
+        b.putFloat(config.getPheromoneNeighbourKeep());
+        b.putFloat(config.getAntTuning().moveRate());
+        b.putFloat(config.getAntTuning().pheromoneStrength());
+        b.putFloat(config.getAntTuning().pheromoneDropRate());
+        b.putLong(config.getSeed());
+        b.putFloat(config.getTerrain().coverage());
+        b.putFloat(config.getTerrain().featureSize());
+        // Spare room for future options.
+        b.putInt(0);
+    }
+
+    /**
+     * Checks the header and reads the configuration the checkpoint was taken with.
+     *
+     * @throws IOException if {@code b} does not hold a checkpoint of a supported version.
+     */
+    static SimulationConfig readHeader(final ByteBuffer b) throws IOException {
+        if (MAGIC != b.getInt()) {
+            throw new IOException("Not a checkpoint");
+        }
+        final int version = b.getInt();
+        if (VERSION != version) {
+            throw new IOException("Unsupported checkpoint version " + version);
+        }
+        return readConfig(b);
+    }
+
+    /**
+     * Reads a configuration written by {@code writeConfig}.
+     */
+    static SimulationConfig readConfig(final ByteBuffer b) {
+        final SimulationConfig config = new SimulationConfig(b.getInt(), b.getInt(), b.getInt(), b.getInt(),
+                b.getFloat(), b.getLong(), b.getInt(), b.getFloat(), b.getFloat(),
+                new PellAnt.Tuning(b.getFloat(), b.getFloat(), b.getFloat()), b.getLong(),
+                new MyAntWorld.Terrain(b.getFloat(), b.getFloat()));
+        b.getInt();
+        return config;
+    }
+
+    /**
+     * Writes {@code state}, from its position to its limit, to {@code path} on the checkpoint writer thread.
+     *
+     * @return Completes with {@code path} once the file is in place.
+     */
+    static CompletableFuture<Path> writeAsync(final ByteBuffer state, final Path path) {
+        return CompletableFuture.supplyAsync(() -> {
+            final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                while (state.hasRemaining()) {
+                    channel.write(state);
+                }
+                channel.force(false);
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return path;
+        }, WRITER);
+    }
+
+    /**
+     * Reads a whole checkpoint file into a buffer.
+     */
+    static ByteBuffer read(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (Integer.MAX_VALUE < size) {
+                throw new IOException("Checkpoint too large: " + size + " bytes");
+            }
+            final ByteBuffer b = ByteBuffer.allocate((int) size);
+            while (b.hasRemaining() && 0 <= channel.read(b)) {
+                // Keep reading until full or end of file.
+            }
+            if (b.hasRemaining()) {
+                throw new IOException("Truncated checkpoint");
+            }
+            return b.flip();
+        }
+    }
+}
@@ -0,0 +1,619 @@
+package org.evensen.ants;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A world that is stored in {@code CHUNK_SIZE * CHUNK_SIZE} chunks, which only exist where something has looked.
+ * <p>
+ * A chunk is generated the first time any of its cells is touched: its obstacles are thresholded fractal noise,
+ * like the terrain of {@code MyAntWorld}, and whether it holds a food source, and where, is drawn from a
+ * {@code CounterRNG} keyed by the world's seed and the chunk's coordinates. Generation therefore does not depend on
+ * the order the chunks are touched in, and a chunk can be thrown away and generated again at will.
+ * </p>
+ * <p>
+ * At most {@code maxResidentChunks} chunks are kept in memory. Touching one more evicts the least recently touched
+ * one, which is written to the spill directory if it has changed since it was generated or read back, and read
+ * back from there when it is touched again. Memory use thus follows where the ants are, not how large the world
+ * is. The width and height only bound the world; they can be up to a few million cells, where float positions
+ * still resolve well within a cell.
+ * </p>
+ * <p>
+ * Pheromones disperse by the rule of {@code MyDispersalPolicy}, but only in resident chunks that have pheromones
+ * and their resident neighbours. Chunks whose pheromones have all fallen below a negligible level drop their
+ * pheromone arrays. Pheromones in evicted chunks keep their level until the chunk is read back, and pheromones
+ * that would spread into an evicted chunk, or past the edge of the world, are lost. There are no pheromone
+ * pyramids, gradients or distance fields, so ants fall back to scanning.
+ * </p>
+ * Not thread safe.
+ */
+public final class ChunkedAntWorld implements AntWorld, Closeable {
+
+    // Constants
+    public static final int CHUNK_SIZE = 64;
+    public static final int DEFAULT_MAX_RESIDENT_CHUNKS = 1024;
+    private static final int CHUNK_BITS = 6;
+    private static final int CELLS = CHUNK_SIZE * CHUNK_SIZE;
+    private static final int PADDED_SIZE = CHUNK_SIZE + 2;
+    private static final int FOOD_SOURCE_RADIUS = 10;
+    private static final int FOOD_SOURCE_START_AMOUNT = 50000;
+    private static final int FOOD_PLACEMENT_ATTEMPTS = 100;
+    private static final float MAX_PHEROMONE_LEVEL = 1.0f;
+    private static final float NUMBER_OF_NEIGHBOURS = 8.0f;
+    private static final float NEGLIGIBLE_PHEROMONE_LEVEL = 1.0E-6f;
+    private static final float NEST_RADIUS = 20.0F;
+    private static final float NEST_CLEARANCE = 10.0F; // Terrain keeps this far from the homes.
+    private static final double TERRAIN_PERSISTENCE = 0.5;
+    private static final float TERRAIN_FINEST_FEATURE = 2.0F;
+    private static final int TERRAIN_THRESHOLD_SIDE = 256; // Noise samples per side to estimate the threshold from.
+    private static final int SPILL_HEADER_BYTES = 4 * Integer.BYTES + 2 * Float.BYTES + 1;
+    private static final int SPILL_BYTES = SPILL_HEADER_BYTES + CELLS + 2 * CELLS * Float.BYTES + CELLS * Integer.BYTES;
+
+    // Instance variables
+    private final int width, height;
+    private final float foodChance;
+    private final long foodSeed;
+    private final float pheromoneDropoff;
+    private final float pheromoneNeighbourKeep;
+    private final List<Position> nests;
+    private final FractalNoise.Sampler terrainSampler; // null without terrain
+    private final double terrainStep;
+    private final float terrainThreshold;
+    private final float[] terrainValues;
+    private final Path spillDirectory;
+    private final int maxResidentChunks;
+    private final Map<Long, Chunk> resident;
+    private final Set<Long> spilled;
+    private final ByteBuffer spillBuffer;
+    private final float[] padded;
+    private Chunk lastChunk;
+    private long lastKey;
+    private long foodCount;
+    private long chunksGenerated;
+    private long chunksRead;
+    private long chunksWritten;
+
+    private static final class Chunk {
+        private final int cx, cy;
+        private final boolean[] obstacles = new boolean[CELLS];
+        private float[] pheromones; // Food at [0, CELLS), foraging at [CELLS, 2 * CELLS), null while all zero
+        private float[] dispersed;
+        private float dispersedMax;
+        private int[] deadAnts;
+        private float sourceX, sourceY;
+        private int sourceAmount; // 0 when there is no food source
+        private int sourceGeneration;
+        private boolean modified; // Since it was generated or read back
+
+        private Chunk(final int cx, final int cy) {
+            this.cx = cx;
+            this.cy = cy;
+        }
+    }
+
+    // Constructor, width of world, height of world, chance of a chunk holding a food source, spill directory
+    public ChunkedAntWorld(final int w, final int h, final float foodChance, final DispersalPolicy dispersalPolicy,
+                           final Path spillDirectory) throws IOException {
+        this(w, h, foodChance, dispersalPolicy, List.of(new Position((float) w, (float) h / 2.0F)),
+                SeedGenerator.nextSeed(), MyAntWorld.Terrain.NONE, DEFAULT_MAX_RESIDENT_CHUNKS, spillDirectory);
+    }
+
+    /**
+     * @param foodChance        Chance of each chunk holding a food source. A depleted source is replaced by a new
+     *                          one in the same chunk.
+     * @param seed              Seeds the terrain and the food placement.
+     * @param maxResidentChunks Chunks to keep in memory, at least 9 so that a chunk and its neighbours fit.
+     * @param spillDirectory    Where evicted chunks are written, created if missing. {@code close()} deletes the
+     *                          files written there.
+     */
+    public ChunkedAntWorld(final int w, final int h, final float foodChance, final DispersalPolicy dispersalPolicy,
+                           final List<Position> nests, final long seed, final MyAntWorld.Terrain terrain,
+                           final int maxResidentChunks, final Path spillDirectory) throws IOException {
+        if (0 >= w || 0 >= h || 9 > maxResidentChunks) {
+            throw new IllegalArgumentException("Invalid world size " + w + "x" + h + " or resident chunk count " +
+                    maxResidentChunks);
+        }
+        this.width = w;
+        this.height = h;
+        this.foodChance = foodChance;
+        this.foodSeed = Hasher.hash(seed, 4L);
+        final MyDispersalPolicy rule = dispersalPolicy instanceof MyDispersalPolicy m ? m : new MyDispersalPolicy();
+        this.pheromoneDropoff = rule.getPheromoneDropoff();
+        this.pheromoneNeighbourKeep = rule.getPheromoneNeighbourKeep();
+        this.nests = List.copyOf(nests);
+        this.spillDirectory = Files.createDirectories(spillDirectory);
+        this.maxResidentChunks = maxResidentChunks;
+        this.spilled = new HashSet<>();
+        this.spillBuffer = ByteBuffer.allocate(SPILL_BYTES);
+        this.padded = new float[PADDED_SIZE * PADDED_SIZE];
+        this.terrainValues = new float[CELLS];
+        this.lastKey = -1L;
+
+        // Insertion ordered, with touched chunks moved to the end, so that lookups from dispersal leave the order be
+        this.resident = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long, Chunk> eldest) {
+                if (size() <= ChunkedAntWorld.this.maxResidentChunks) {
+                    return false;
+                }
+                spill(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        };
+
+        if (0 < terrain.coverage()) {
+            this.terrainStep = 1.0 / terrain.featureSize();
+            final int lastOctave = Math.max(0,
+                    31 - Integer.numberOfLeadingZeros((int) (terrain.featureSize() / TERRAIN_FINEST_FEATURE)));
+            final long noiseSeed = Hasher.hash(seed, 3L);
+            this.terrainSampler = new FractalNoise.Sampler(TERRAIN_PERSISTENCE, 0, lastOctave, noiseSeed);
+
+            // The noise looks alike everywhere, so a sample over 32 features per side gives the threshold
+            final float[] samples = new float[TERRAIN_THRESHOLD_SIDE * TERRAIN_THRESHOLD_SIDE];
+            new FractalNoise.Sampler(TERRAIN_PERSISTENCE, 0, lastOctave, noiseSeed).fill(samples,
+                    TERRAIN_THRESHOLD_SIDE, 0, 0, TERRAIN_THRESHOLD_SIDE, TERRAIN_THRESHOLD_SIDE, 0.125);
+            Arrays.sort(samples);
+            this.terrainThreshold = samples[Math.min(samples.length - 1,
+                    (int) ((1.0f - Math.min(1.0f, terrain.coverage())) * samples.length))];
+        } else {
+            this.terrainStep = 0.0;
+            this.terrainSampler = null;
+            this.terrainThreshold = Float.POSITIVE_INFINITY;
+        }
+    }
+
+    private static long key(final int cx, final int cy) {
+        return (long) cx << 32 | cy;
+    }
+
+    // The chunk holding cell <x, y>, which must be in bounds, generated or read back if it isn't resident
+    private Chunk chunk(final int x, final int y) {
+        final long key = key(x >> CHUNK_BITS, y >> CHUNK_BITS);
+        if (key == this.lastKey) {
+            return this.lastChunk;
+        }
+        Chunk c = this.resident.remove(key);
+        if (null == c) {
+            c = this.spilled.contains(key) ? read(key) : generate(x >> CHUNK_BITS, y >> CHUNK_BITS);
+        }
+        this.resident.put(key, c);
+        this.lastKey = key;
+        this.lastChunk = c;
+        return c;
+    }
+
+    private static int cell(final int x, final int y) {
+        return (x & (CHUNK_SIZE - 1)) * CHUNK_SIZE + (y & (CHUNK_SIZE - 1));
+    }
+
+    private Chunk generate(final int cx, final int cy) {
+        final Chunk c = new Chunk(cx, cy);
+        final int x0 = cx << CHUNK_BITS;
+        final int y0 = cy << CHUNK_BITS;
+        if (null != this.terrainSampler) {
+            this.terrainSampler.fill(this.terrainValues, CHUNK_SIZE, x0, y0, CHUNK_SIZE, CHUNK_SIZE,
+                    this.terrainStep);
+        }
+        final float clearance = NEST_RADIUS + NEST_CLEARANCE;
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            for (int j = 0; j < CHUNK_SIZE; j++) {
+                final int x = x0 + i;
+                final int y = y0 + j;
+                // Cells past the edge of the world are blocked, so nothing is ever put there
+                c.obstacles[i * CHUNK_SIZE + j] = x >= this.width || y >= this.height ||
+                        null != this.terrainSampler && this.terrainValues[i * CHUNK_SIZE + j] > this.terrainThreshold
+                                && !isNearNest(x, y, clearance);
+            }
+        }
+        final CounterRNG rng = new CounterRNG(this.foodSeed, key(cx, cy));
+        if (rng.nextFloat() < this.foodChance) {
+            placeFoodSource(c, rng);
+        }
+        this.chunksGenerated++;
+        return c;
+    }
+
+    // Puts a new source at a random position of the chunk, off obstacles, or none if no such position is found
+    private static void placeFoodSource(final Chunk c, final CounterRNG rng) {
+        c.sourceAmount = 0;
+        for (int attempt = 0; attempt < FOOD_PLACEMENT_ATTEMPTS; attempt++) {
+            // Kept a radius inside the chunk, so that a source only ever covers cells of its own chunk
+            final float x = FOOD_SOURCE_RADIUS + rng.nextFloat() * (CHUNK_SIZE - 2 * FOOD_SOURCE_RADIUS);
+            final float y = FOOD_SOURCE_RADIUS + rng.nextFloat() * (CHUNK_SIZE - 2 * FOOD_SOURCE_RADIUS);
+            if (!c.obstacles[(int) x * CHUNK_SIZE + (int) y]) {
+                c.sourceX = (c.cx << CHUNK_BITS) + x;
+                c.sourceY = (c.cy << CHUNK_BITS) + y;
+                c.sourceAmount = FOOD_SOURCE_START_AMOUNT;
+                return;
+            }
+        }
+    }
+
+    private boolean isNearNest(final int x, final int y, final float radius) {
+        for (final Position nest : this.nests) {
+            final float dx = x - nest.getX();
+            final float dy = y - nest.getY();
+            if (dx * dx + dy * dy <= radius * radius) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Path spillPath(final long key) {
+        return this.spillDirectory.resolve("chunk-" + (key >>> 32) + "-" + (key & 0xFFFFFFFFL));
+    }
+
+    // Writes an evicted chunk, unless it is unchanged since it was generated or last written
+    private void spill(final long key, final Chunk c) {
+        if (c == this.lastChunk) {
+            this.lastChunk = null;
+            this.lastKey = -1L;
+        }
+        if (!c.modified) {
+            return;
+        }
+        final ByteBuffer b = this.spillBuffer.clear();
+        b.putInt(c.cx);
+        b.putInt(c.cy);
+        b.putInt(c.sourceAmount);
+        b.putInt(c.sourceGeneration);
+        b.putFloat(c.sourceX);
+        b.putFloat(c.sourceY);
+        b.put((byte) ((null == c.pheromones ? 0 : 1) | (null == c.deadAnts ? 0 : 2)));
+        for (final boolean obstacle : c.obstacles) {
+            b.put((byte) (obstacle ? 1 : 0));
+        }
+        if (null != c.pheromones) {
+            b.asFloatBuffer().put(c.pheromones);
+            b.position(b.position() + c.pheromones.length * Float.BYTES);
+        }
+        if (null != c.deadAnts) {
+            b.asIntBuffer().put(c.deadAnts);
+            b.position(b.position() + c.deadAnts.length * Integer.BYTES);
+        }
+        try (FileChannel channel = FileChannel.open(spillPath(key), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            b.flip();
+            while (b.hasRemaining()) {
+                channel.write(b);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.spilled.add(key);
+        this.chunksWritten++;
+    }
+
+    private Chunk read(final long key) {
+        final ByteBuffer b = this.spillBuffer.clear();
+        try (FileChannel channel = FileChannel.open(spillPath(key), StandardOpenOption.READ)) {
+            while (b.hasRemaining() && 0 <= channel.read(b)) {
+                continue;
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        b.flip();
+        final Chunk c = new Chunk(b.getInt(), b.getInt());
+        c.sourceAmount = b.getInt();
+        c.sourceGeneration = b.getInt();
+        c.sourceX = b.getFloat();
+        c.sourceY = b.getFloat();
+        final int contents = b.get();
+        for (int i = 0; i < CELLS; i++) {
+            c.obstacles[i] = 0 != b.get();
+        }
+        if (0 != (contents & 1)) {
+            c.pheromones = new float[2 * CELLS];
+            b.asFloatBuffer().get(c.pheromones);
+            b.position(b.position() + c.pheromones.length * Float.BYTES);
+        }
+        if (0 != (contents & 2)) {
+            c.deadAnts = new int[CELLS];
+            b.asIntBuffer().get(c.deadAnts);
+        }
+        this.chunksRead++;
+        return c;
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    @Override
+    public boolean isObstacle(final Position p) {
+        return !p.isInBounds(this.width, this.height) || chunk(p.floorX(), p.floorY()).obstacles[cell(p)];
+    }
+
+    private static int cell(final Position p) {
+        return cell(p.floorX(), p.floorY());
+    }
+
+    @Override
+    public void dropForagingPheromone(final Position p, final float amount) {
+        dropPheromone(p, CELLS, amount);
+    }
+
+    @Override
+    public void dropFoodPheromone(final Position p, final float amount) {
+        dropPheromone(p, 0, amount);
+    }
+
+    private void dropPheromone(final Position p, final int offset, final float amount) {
+        if (!p.isInBounds(this.width, this.height)) {
+            return;
+        }
+        dropPheromone(chunk(p.floorX(), p.floorY()), offset + cell(p), amount);
+    }
+
+    private static void dropPheromone(final Chunk c, final int i, final float amount) {
+        if (null == c.pheromones) {
+            c.pheromones = new float[2 * CELLS];
+        }
+        c.pheromones[i] = Math.min(MAX_PHEROMONE_LEVEL, c.pheromones[i] + amount);
+        c.modified = true;
+    }
+
+    @Override
+    public void dropFood(final Position p) {
+        this.foodCount++;
+    }
+
+    @Override
+    public void pickUpFood(final Position p) {
+        if (!containsFood(p)) {
+            return;
+        }
+        final Chunk c = chunk(p.floorX(), p.floorY());
+        c.sourceAmount--;
+        c.modified = true;
+        if (0 == c.sourceAmount) {
+            // Replace it within the chunk, at the position drawn for the next generation of sources
+            c.sourceGeneration++;
+            placeFoodSource(c, new CounterRNG(this.foodSeed, key(c.cx, c.cy), c.sourceGeneration));
+        }
+    }
+
+    @Override
+    public float getDeadAntCount(final Position p) {
+        if (!p.isInBounds(this.width, this.height)) {
+            return 0.0f;
+        }
+        final Chunk c = chunk(p.floorX(), p.floorY());
+        return null == c.deadAnts ? 0.0f : c.deadAnts[cell(p)];
+    }
+
+    @Override
+    public void addDeadAnt(final Position p) {
+        if (p.isInBounds(this.width, this.height)) {
+            final Chunk c = chunk(p.floorX(), p.floorY());
+            if (null == c.deadAnts) {
+                c.deadAnts = new int[CELLS];
+            }
+            c.deadAnts[cell(p)]++;
+            c.modified = true;
+        }
+    }
+
+    @Override
+    public float getForagingStrength(final Position p) {
+        return getStrength(p, CELLS);
+    }
+
+    @Override
+    public float getFoodStrength(final Position p) {
+        return getStrength(p, 0);
+    }
+
+    private float getStrength(final Position p, final int offset) {
+        if (!p.isInBounds(this.width, this.height)) {
+            return 0.0f;
+        }
+        final Chunk c = chunk(p.floorX(), p.floorY());
+        return null == c.pheromones ? 0.0f : c.pheromones[offset + cell(p)];
+    }
+
+    /**
+     * Answers per chunk, without touching any: only chunks that were never given pheromones are known to have none.
+     */
+    @Override
+    public boolean hasPheromonesNear(final Position p, final float radius) {
+        final int cx0 = Math.max(0, (int) Math.floor(p.getX() - radius)) >> CHUNK_BITS;
+        final int cy0 = Math.max(0, (int) Math.floor(p.getY() - radius)) >> CHUNK_BITS;
+        final int cx1 = Math.min(this.width - 1, (int) Math.floor(p.getX() + radius)) >> CHUNK_BITS;
+        final int cy1 = Math.min(this.height - 1, (int) Math.floor(p.getY() + radius)) >> CHUNK_BITS;
+        for (int cx = cx0; cx <= cx1; cx++) {
+            for (int cy = cy0; cy <= cy1; cy++) {
+                final long key = key(cx, cy);
+                final Chunk c = this.resident.get(key);
+                if (null == c ? this.spilled.contains(key) : null != c.pheromones) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean containsFood(final Position p) {
+        if (!p.isInBounds(this.width, this.height)) {
+            return false;
+        }
+        final Chunk c = chunk(p.floorX(), p.floorY());
+        final float dx = p.floorX() - c.sourceX;
+        final float dy = p.floorY() - c.sourceY;
+        return 0 < c.sourceAmount && dx * dx + dy * dy <= FOOD_SOURCE_RADIUS * FOOD_SOURCE_RADIUS;
+    }
+
+    @Override
+    public long getFoodCount() {
+        return this.foodCount;
+    }
+
+    @Override
+    public boolean isHome(final Position p) {
+        return p.isInBounds(this.width, this.height) && isNearNest(p.floorX(), p.floorY(), NEST_RADIUS);
+    }
+
+    @Override
+    public List<Position> getNests() {
+        return this.nests;
+    }
+
+    @Override
+    public void dispersePheromones() {
+        // Every chunk is dispersed from the levels before dispersal, so all are computed before any is replaced
+        final List<Chunk> chunks = new ArrayList<>();
+        for (final Chunk c : this.resident.values()) {
+            if (null != c.pheromones || hasScentedNeighbour(c)) {
+                chunks.add(c);
+            }
+        }
+        for (final Chunk c : chunks) {
+            disperse(c);
+        }
+        for (final Chunk c : chunks) {
+            if (NEGLIGIBLE_PHEROMONE_LEVEL > c.dispersedMax) {
+                c.modified |= null != c.pheromones;
+                c.pheromones = null;
+                c.dispersed = null;
+            } else {
+                final float[] previous = c.pheromones;
+                c.pheromones = c.dispersed;
+                c.dispersed = previous;
+                c.modified = true;
+            }
+        }
+
+        // Resident food sources keep marking themselves, without counting as a touch of their chunk
+        for (final Chunk c : this.resident.values()) {
+            if (0 < c.sourceAmount) {
+                dropPheromone(c, cell((int) c.sourceX, (int) c.sourceY), 1.0F);
+            }
+        }
+    }
+
+    private boolean hasScentedNeighbour(final Chunk c) {
+        for (int dx = -1; 1 >= dx; dx++) {
+            for (int dy = -1; 1 >= dy; dy++) {
+                final Chunk n = 0 > c.cx + dx || 0 > c.cy + dy ? null : this.resident.get(key(c.cx + dx, c.cy + dy));
+                if (null != n && null != n.pheromones) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Computes the chunk's dispersed levels into its spare arrays, and their maximum
+    private void disperse(final Chunk c) {
+        if (null == c.dispersed) {
+            c.dispersed = new float[2 * CELLS];
+        }
+        float max = 0.0f;
+        for (int offset = 0; offset < 2 * CELLS; offset += CELLS) {
+            gatherPadded(c, offset);
+            final float[] p = this.padded;
+            for (int i = 0; i < CHUNK_SIZE; i++) {
+                for (int j = 0; j < CHUNK_SIZE; j++) {
+                    float npl = 0.0F;
+                    if (!c.obstacles[i * CHUNK_SIZE + j]) {
+                        final int k = (i + 1) * PADDED_SIZE + j + 1;
+                        final float sum = p[k - PADDED_SIZE - 1] + p[k - PADDED_SIZE] + p[k - PADDED_SIZE + 1]
+                                + p[k - 1] + p[k + 1] + p[k + PADDED_SIZE - 1] + p[k + PADDED_SIZE]
+                                + p[k + PADDED_SIZE + 1];
+                        npl = ((1.0F - this.pheromoneNeighbourKeep) * sum) / NUMBER_OF_NEIGHBOURS
+                                + this.pheromoneNeighbourKeep * p[k];
+                    }
+                    final float level = npl * this.pheromoneDropoff;
+                    c.dispersed[offset + i * CHUNK_SIZE + j] = level;
+                    max = Math.max(max, level);
+                }
+            }
+        }
+        c.dispersedMax = max;
+    }
+
+    // Copies one pheromone type of the chunk, with a border of one cell from its resident neighbours, zero elsewhere
+    private void gatherPadded(final Chunk c, final int offset) {
+        Arrays.fill(this.padded, 0.0f);
+        for (int dx = -1; 1 >= dx; dx++) {
+            for (int dy = -1; 1 >= dy; dy++) {
+                final Chunk n = 0 > c.cx + dx || 0 > c.cy + dy ? null : this.resident.get(key(c.cx + dx, c.cy + dy));
+                if (null == n || null == n.pheromones) {
+                    continue;
+                }
+                final int iFrom = 0 > dx ? -1 : 0 < dx ? CHUNK_SIZE : 0;
+                final int iTo = 0 == dx ? CHUNK_SIZE - 1 : iFrom;
+                final int jFrom = 0 > dy ? -1 : 0 < dy ? CHUNK_SIZE : 0;
+                final int jTo = 0 == dy ? CHUNK_SIZE - 1 : jFrom;
+                for (int i = iFrom; i <= iTo; i++) {
+                    final int src = offset + (i & (CHUNK_SIZE - 1)) * CHUNK_SIZE;
+                    for (int j = jFrom; j <= jTo; j++) {
+                        this.padded[(i + 1) * PADDED_SIZE + j + 1] = n.pheromones[src + (j & (CHUNK_SIZE - 1))];
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void setObstacle(final Position p, final boolean add) {
+        if (!p.isInBounds(this.width, this.height)) {
+            return;
+        }
+        final Chunk c = chunk(p.floorX(), p.floorY());
+        if (c.obstacles[cell(p)] != add) {
+            c.obstacles[cell(p)] = add;
+            c.modified = true;
+        }
+    }
+
+    @Override
+    public void hitObstacle(final Position p, final float strength) { }
+
+    public int getResidentChunks() {
+        return this.resident.size();
+    }
+
+    /**
+     * @return Chunks generated, read back from the spill directory and written to it, so far.
+     */
+    public long[] getChunkCounts() {
+        return new long[]{this.chunksGenerated, this.chunksRead, this.chunksWritten};
+    }
+
+    /**
+     * Deletes the spilled chunks. The world must not be used afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        for (final long key : this.spilled) {
+            Files.deleteIfExists(spillPath(key));
+        }
+        this.spilled.clear();
+        this.resident.clear();
+        this.lastChunk = null;
+        this.lastKey = -1L;
+    }
+}
@@ -0,0 +1,151 @@
+package org.evensen.ants;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A copy of the ants of an {@code AntColony} as they were at the end of an epoch, for rendering on another thread.
+ * Ants are stored as parallel arrays, dead ants first and live ones after them. Dead ants never change and the
+ * graveyard only grows, so each dead ant is only copied by the first capture after it died.
+ */
+public final class ColonySnapshot {
+    private static final byte FORAGING = 0;
+    private static final byte CARRYING = 1;
+    private static final byte DEAD = 2;
+
+    private final int densityOriginX;
+    private final int densityOriginY;
+    private final int densityColumns;
+    private final int densityRows;
+    private final int densityCellSize;
+    private final int[] antCounts;
+    private final int[] carryingCounts;
+    private AntColony capturedColony;
+    private int deadCount;
+    private int count;
+    private float[] xs;
+    private float[] ys;
+    private float[] directions;
+    private byte[] states;
+
+    public ColonySnapshot(final int densityOriginX, final int densityOriginY, final int densityColumns,
+                          final int densityRows, final int densityCellSize) {
+        this.densityOriginX = densityOriginX;
+        this.densityOriginY = densityOriginY;
+        this.densityColumns = densityColumns;
+        this.densityRows = densityRows;
+        this.densityCellSize = densityCellSize;
+        this.antCounts = new int[densityColumns * densityRows];
+        this.carryingCounts = new int[densityColumns * densityRows];
+        this.xs = new float[0];
+        this.ys = new float[0];
+        this.directions = new float[0];
+        this.states = new byte[0];
+    }
+
+    /**
+     * Copies the current state of {@code colony}. Must be called on the thread updating the colony.
+     */
+    public void capture(final AntColony colony) {
+        final List<Ant> live = colony.getAnts();
+        final List<Ant> dead = colony.getDeadAnts();
+        if (colony != this.capturedColony || dead.size() < this.deadCount) {
+            this.capturedColony = colony;
+            this.deadCount = 0;
+        }
+        final int n = dead.size() + live.size();
+        if (this.xs.length < n) {
+            // Leave room for a growing graveyard, and keep the dead ants already copied.
+            final int capacity = n + n / 4;
+            this.xs = Arrays.copyOf(this.xs, capacity);
+            this.ys = Arrays.copyOf(this.ys, capacity);
+            this.directions = Arrays.copyOf(this.directions, capacity);
+            this.states = Arrays.copyOf(this.states, capacity);
+        }
+        for (int i = this.deadCount; i < dead.size(); i++) {
+            set(i, dead.get(i));
+        }
+        this.deadCount = dead.size();
+        int i = this.deadCount;
+        for (final Ant a : live) {
+            set(i++, a);
+        }
+        this.count = n;
+        colony.copyDensity(this.antCounts, this.carryingCounts);
+    }
+
+    private void set(final int i, final Ant a) {
+        final Position p = a.getPosition();
+        this.xs[i] = p.getX();
+        this.ys[i] = p.getY();
+        this.directions[i] = a.getDirection();
+        this.states[i] = a.isDead() ? DEAD : a.hasFood() ? CARRYING : FORAGING;
+    }
+
+    /**
+     * @return The number of ants, live and dead.
+     */
+    public int getAntCount() {
+        return this.count;
+    }
+
+    public float getX(final int i) {
+        return this.xs[i];
+    }
+
+    public float getY(final int i) {
+        return this.ys[i];
+    }
+
+    public float getDirection(final int i) {
+        return this.directions[i];
+    }
+
+    public boolean isDead(final int i) {
+        return DEAD == this.states[i];
+    }
+
+    public boolean hasFood(final int i) {
+        return CARRYING == this.states[i];
+    }
+
+    /**
+     * @return The left edge of the density map, in world units.
+     */
+    public int getDensityOriginX() {
+        return this.densityOriginX;
+    }
+
+    /**
+     * @return The top edge of the density map, in world units.
+     */
+    public int getDensityOriginY() {
+        return this.densityOriginY;
+    }
+
+    public int getDensityColumns() {
+        return this.densityColumns;
+    }
+
+    public int getDensityRows() {
+        return this.densityRows;
+    }
+
+    /**
+     * @return The side of a density cell, in world units.
+     */
+    public int getDensityCellSize() {
+        return this.densityCellSize;
+    }
+
+    /**
+     * Copies the ant density, indexed as {@code row * getDensityColumns() + column}.
+     *
+     * @param ants     Receives the number of live ants per cell.
+     * @param carrying Receives the number of food carrying ants per cell. The rest are foraging.
+     */
+    public void copyDensity(final int[] ants, final int[] carrying) {
+        System.arraycopy(this.antCounts, 0, ants, 0, this.antCounts.length);
+        System.arraycopy(this.carryingCounts, 0, carrying, 0, this.carryingCounts.length);
+    }
+}
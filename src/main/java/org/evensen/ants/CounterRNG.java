@@ -0,0 +1,93 @@
+package org.evensen.ants;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * A counter-based generator: draw {@code i} of step {@code n} of stream {@code s} under seed {@code k} is a pure
+ * function of {@code (k, s, n, i)}, computed with {@code Hasher} mixing.
+ * <p>
+ * An ant uses its id as the stream and its move count as the step, so what it draws does not depend on how many
+ * draws other ants made, or in which order, or on which thread. Streams are random access: no state is carried
+ * from one step to the next other than the step number itself.
+ * </p>
+ */
+public final class CounterRNG implements RandomGenerator {
+    private static final float FLOAT_UNIT = 0x1.0p-24f;
+    private final long seed;
+    private final long stream;
+    private long step;
+    private int draw;
+
+    public CounterRNG(final long seed, final long stream) {
+        this(seed, stream, 0);
+    }
+
+    /**
+     * Positions the generator at the first draw of {@code step}.
+     */
+    public CounterRNG(final long seed, final long stream, final long step) {
+        this.seed = seed;
+        this.stream = stream;
+        this.step = step;
+    }
+
+    /**
+     * @return The value of draw {@code draw} of {@code step} of {@code stream} under {@code seed}.
+     */
+    public static long at(final long seed, final long stream, final long step, final int draw) {
+        // The seed gets a round of its own: mix adds its inputs first, so mix(seed, stream) would be the same for
+        // seed + 1 and stream - 1.
+        long h = Hasher.mix(Hasher.mix(seed, 0L), stream);
+        h = Hasher.mix(h, step);
+        h = Hasher.mix(h, draw);
+        // Two more rounds to spread the last inputs over all bits.
+        h = Hasher.mix(h, h >>> 32);
+        return Hasher.mix(h, 0L);
+    }
+
+    /**
+     * Moves on to the first draw of the next step.
+     */
+    public void nextStep() {
+        this.step++;
+        this.draw = 0;
+    }
+
+    public long getSeed() {
+        return this.seed;
+    }
+
+    public long getStream() {
+        return this.stream;
+    }
+
+    public long getStep() {
+        return this.step;
+    }
+
+    @Override
+    public long nextLong() {
+        return at(this.seed, this.stream, this.step, this.draw++);
+    }
+
+    /**
+     * @return The value of {@code at(seed, stream, step, draw)} as a float in {@code [0, 1)}.
+     */
+    public static float floatAt(final long seed, final long stream, final long step, final int draw) {
+        return toFloat(at(seed, stream, step, draw));
+    }
+
+    private static float toFloat(final long value) {
+        return (value >>> 40) * FLOAT_UNIT;
+    }
+
+    @Override
+    public float nextFloat() {
+        return toFloat(nextLong());
+    }
+
+    @Override
+    public double nextGaussian() {
+        return Ziggurat.sample(this);
+    }
+}
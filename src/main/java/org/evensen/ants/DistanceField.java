@@ -0,0 +1,269 @@
+package org.evensen.ants;
+
+import java.util.Arrays;
+
+/**
+ * A grid of distances to the nearest source cell, going around blocked cells.
+ * <p>
+ * Distances are chamfer distances (5 per straight step, 7 per diagonal step) which approximate euclidean
+ * distance within a few percent. The field is kept exact under changes without recomputing it from scratch:
+ * changed cells, and the cells whose shortest path went through them, are invalidated and refilled from the valid
+ * cells around them. Changes are collected and applied together by {@code update()}. Queries only read the
+ * distances as of the last update, so any number of threads may query at once, as long as none changes or updates
+ * the field meanwhile.
+ * </p>
+ * Cells further away than the optional maximum distance are left unreachable, which keeps updates local.
+ */
+public final class DistanceField {
+    private static final int STRAIGHT = 5;
+    private static final int DIAGONAL = 7;
+    private static final int INFINITE = Integer.MAX_VALUE;
+    private static final int[] DELTA_X = {1, -1, 0, 0, 1, 1, -1, -1};
+    private static final int[] DELTA_Y = {0, 0, 1, -1, 1, -1, 1, -1};
+    private static final int[] COST = {STRAIGHT, STRAIGHT, STRAIGHT, STRAIGHT, DIAGONAL, DIAGONAL, DIAGONAL, DIAGONAL};
+
+    private final int width;
+    private final int height;
+    private final int maxDistance;
+    private final int[] distance;
+    private final boolean[] source;
+    private final boolean[] blocked;
+
+    // Work queue for propagation, a ring buffer with at most one entry per cell.
+    private final int[] queue;
+    private final boolean[] queued;
+    private int queueHead;
+    private int queueSize;
+
+    // Changed cells waiting for an update, followed by the cells invalidated because of them.
+    private int pendingCount;
+    private final int[] invalidated;
+    private final int[] invalidatedDistance;
+    private final boolean[] marked;
+
+    /**
+     * Creates a field without sources, where every cell is unreachable.
+     *
+     * @param width       Width of the grid.
+     * @param height      Height of the grid.
+     * @param maxDistance Distance, in cells, beyond which cells are left unreachable.
+     *                    Use {@code Float.POSITIVE_INFINITY} for no limit.
+     */
+    public DistanceField(final int width, final int height, final float maxDistance) {
+        this.width = width;
+        this.height = height;
+        this.maxDistance = Float.isInfinite(maxDistance) ? INFINITE - DIAGONAL : Math.round(maxDistance * STRAIGHT);
+        final int cells = width * height;
+        this.distance = new int[cells];
+        Arrays.fill(this.distance, INFINITE);
+        this.source = new boolean[cells];
+        this.blocked = new boolean[cells];
+        this.queue = new int[cells];
+        this.queued = new boolean[cells];
+        this.invalidated = new int[cells];
+        this.invalidatedDistance = new int[cells];
+        this.marked = new boolean[cells];
+    }
+
+    private int index(final int x, final int y) {
+        return x * this.height + y;
+    }
+
+    private boolean isInBounds(final int x, final int y) {
+        return 0 <= x && x < this.width && 0 <= y && y < this.height;
+    }
+
+    public void addSource(final int x, final int y) {
+        if (isInBounds(x, y) && !this.source[index(x, y)]) {
+            this.source[index(x, y)] = true;
+            markChanged(index(x, y));
+        }
+    }
+
+    public void removeSource(final int x, final int y) {
+        if (isInBounds(x, y) && this.source[index(x, y)]) {
+            this.source[index(x, y)] = false;
+            markChanged(index(x, y));
+        }
+    }
+
+    /**
+     * Blocks or unblocks a cell. Blocked cells are unreachable and can not be passed through.
+     */
+    public void setBlocked(final int x, final int y, final boolean block) {
+        if (isInBounds(x, y) && this.blocked[index(x, y)] != block) {
+            this.blocked[index(x, y)] = block;
+            markChanged(index(x, y));
+        }
+    }
+
+    private void markChanged(final int i) {
+        if (!this.marked[i]) {
+            this.marked[i] = true;
+            this.invalidated[this.pendingCount] = i;
+            this.pendingCount++;
+        }
+    }
+
+    /**
+     * Brings the distances up to date with all changes since the last update. Batching many changes before an
+     * update is much cheaper than updating after each.
+     */
+    public void update() {
+        if (0 < this.pendingCount) {
+            invalidatePending();
+        }
+    }
+
+    /**
+     * @return The distance in cells from {@code <x, y>} to the closest source, or
+     * {@code Float.POSITIVE_INFINITY} if there is none within reach (or the cell is outside the grid).
+     */
+    public float getDistance(final int x, final int y) {
+        if (!isInBounds(x, y)) {
+            return Float.POSITIVE_INFINITY;
+        }
+        final int d = this.distance[index(x, y)];
+        return INFINITE == d ? Float.POSITIVE_INFINITY : d / (float) STRAIGHT;
+    }
+
+    /**
+     * Gives the direction of steepest descent towards the closest source, estimated by central differences over
+     * the reachable neighbours.
+     *
+     * @return An angle in {@code [0, TAU)}, or a negative value at sources and unreachable cells.
+     */
+    public float getDescentAngle(final int x, final int y) {
+        if (!isInBounds(x, y)) {
+            return -1.0f;
+        }
+        final int d = this.distance[index(x, y)];
+        if (0 == d || INFINITE == d) {
+            return -1.0f;
+        }
+        final float gx = neighbourDistance(x + 1, y, d) - neighbourDistance(x - 1, y, d);
+        final float gy = neighbourDistance(x, y + 1, d) - neighbourDistance(x, y - 1, d);
+        if (0.0f == gx && 0.0f == gy) {
+            return -1.0f;
+        }
+        final float angle = (float) Math.atan2(-gy, -gx);
+        return 0.0f > angle ? angle + GraphicsMath.TAU : angle;
+    }
+
+    // Unreachable neighbours count as being as far away as the cell itself, i.e. they don't tilt the gradient.
+    private float neighbourDistance(final int x, final int y, final int fallback) {
+        if (!isInBounds(x, y)) {
+            return fallback;
+        }
+        final int d = this.distance[index(x, y)];
+        return INFINITE == d ? fallback : d;
+    }
+
+    private int bestFromNeighbours(final int x, final int y) {
+        int best = INFINITE;
+        for (int k = 0; k < COST.length; k++) {
+            final int nx = x + DELTA_X[k];
+            final int ny = y + DELTA_Y[k];
+            if (isInBounds(nx, ny)) {
+                final int n = index(nx, ny);
+                if (!this.blocked[n] && INFINITE != this.distance[n]) {
+                    final int candidate = this.distance[n] + COST[k];
+                    if (candidate < best && candidate <= this.maxDistance) {
+                        best = candidate;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Invalidates every changed cell and every cell whose recorded distance could have been derived through one,
+     * then recomputes just those cells from the valid cells around them.
+     */
+    private void invalidatePending() {
+        int count = this.pendingCount;
+        this.pendingCount = 0;
+        for (int k = 0; k < count; k++) {
+            final int u = this.invalidated[k];
+            this.invalidatedDistance[k] = this.distance[u];
+            this.distance[u] = INFINITE;
+        }
+
+        for (int k = 0; k < count; k++) {
+            final int u = this.invalidated[k];
+            final int oldDistance = this.invalidatedDistance[k];
+            if (INFINITE == oldDistance) {
+                continue;
+            }
+            final int ux = u / this.height;
+            final int uy = u % this.height;
+            for (int d = 0; d < COST.length; d++) {
+                final int vx = ux + DELTA_X[d];
+                final int vy = uy + DELTA_Y[d];
+                if (!isInBounds(vx, vy)) {
+                    continue;
+                }
+                final int v = index(vx, vy);
+                if (!this.marked[v] && this.distance[v] == oldDistance + COST[d]) {
+                    this.marked[v] = true;
+                    this.invalidated[count] = v;
+                    this.invalidatedDistance[count] = this.distance[v];
+                    count++;
+                    this.distance[v] = INFINITE;
+                }
+            }
+        }
+
+        for (int k = 0; k < count; k++) {
+            this.marked[this.invalidated[k]] = false;
+        }
+        for (int k = 0; k < count; k++) {
+            final int u = this.invalidated[k];
+            if (this.blocked[u]) {
+                continue;
+            }
+            this.distance[u] = this.source[u] ? 0 : bestFromNeighbours(u / this.height, u % this.height);
+            if (INFINITE != this.distance[u]) {
+                enqueue(u);
+            }
+        }
+        propagate();
+    }
+
+    private void enqueue(final int i) {
+        if (!this.queued[i]) {
+            this.queued[i] = true;
+            this.queue[(this.queueHead + this.queueSize) % this.queue.length] = i;
+            this.queueSize++;
+        }
+    }
+
+    private void propagate() {
+        while (0 < this.queueSize) {
+            final int u = this.queue[this.queueHead];
+            this.queueHead = (this.queueHead + 1) % this.queue.length;
+            this.queueSize--;
+            this.queued[u] = false;
+            if (this.blocked[u]) {
+                continue;
+            }
+            final int du = this.distance[u];
+            final int ux = u / this.height;
+            final int uy = u % this.height;
+            for (int d = 0; d < COST.length; d++) {
+                final int vx = ux + DELTA_X[d];
+                final int vy = uy + DELTA_Y[d];
+                if (!isInBounds(vx, vy)) {
+                    continue;
+                }
+                final int v = index(vx, vy);
+                final int candidate = du + COST[d];
+                if (!this.blocked[v] && candidate < this.distance[v] && candidate <= this.maxDistance) {
+                    this.distance[v] = candidate;
+                    enqueue(v);
+                }
+            }
+        }
+    }
+}
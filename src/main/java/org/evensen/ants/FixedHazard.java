@@ -0,0 +1,44 @@
+package org.evensen.ants;
+
+/**
+ * A hazard that stays in one place and hurts every live ant within its radius, every epoch.
+ */
+public final class FixedHazard implements AntHazard {
+    private final Position position;
+    private final float radius;
+    private final int strength;
+
+    /**
+     * @param strength Damage done to each ant in range per epoch.
+     */
+    public FixedHazard(final Position position, final float radius, final int strength) {
+        this.position = position;
+        this.radius = radius;
+        this.strength = strength;
+    }
+
+    @Override
+    public void update(final AntWorld w) {
+    }
+
+    @Override
+    public Position getPosition() {
+        return this.position;
+    }
+
+    @Override
+    public float getRadius() {
+        return this.radius;
+    }
+
+    public int getStrength() {
+        return this.strength;
+    }
+
+    @Override
+    public void damage(final Ant a) {
+        if (!a.isDead()) {
+            a.damage(this.strength);
+        }
+    }
+}
@@ -27,4 +27,8 @@ public class FoodSource {
     public int getRadius() {
         return this.r;
     }
+
+    public int getAmount() {
+        return this.amount;
+    }
 }
@@ -1,7 +1,14 @@
 package org.evensen.ants;
 
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
 public enum FractalNoise {
     ;
+    private static final int TILE_SIZE = 64;
+    private static final int MAX_GRADIENT_TABLE = 1 << 16; // Lattice points per tile and octave to precompute.
+    private static final ThreadLocal<float[]> TILE_BUFFERS =
+            ThreadLocal.withInitial(() -> new float[TILE_SIZE * TILE_SIZE]);
 
     private static double hash(final double x0, final double y0, final long seed) {
         long x = (long) x0;
@@ -19,22 +26,21 @@ public enum FractalNoise {
         return (a1 - a0) * ((w * (w * 6.0 - 15.0) + 10.0) * w * w * w) + a0;
     }
 
-    /* Create pseudorandom direction vector
+    /* Angle of the pseudorandom gradient at a lattice point
      */
-    private static Vector2 randomGradient(final long ix, final long iy, final long seed) {
-        final double random = hash(ix, iy, seed) * GraphicsMath.TAU;
-        return new Vector2(Math.cos(random), Math.sin(random));
+    private static double gradientAngle(final long ix, final long iy, final long seed) {
+        return hash(ix, iy, seed) * GraphicsMath.TAU;
     }
 
     private static double dotGridGradient(final long ix, final long iy, final double x, final double y, final long seed) {
-        final Vector2 gradient = randomGradient(ix, iy, seed);
+        final double angle = gradientAngle(ix, iy, seed);
 
         // Compute the distance vector
         final double dx = x - ix;
         final double dy = y - iy;
 
         // Compute the dot-product
-        return dx * gradient.x + dy * gradient.y;
+        return dx * Math.cos(angle) + dy * Math.sin(angle);
     }
 
     private static double perlin(final double x, final double y, final long seed) {
@@ -80,13 +86,179 @@ public enum FractalNoise {
         return acc / ampSum;
     }
 
-    private static class Vector2 {
-        final double x;
-        final double y;
+    /**
+     * Receives the noise of one tile of a grid.
+     */
+    @FunctionalInterface
+    public interface TileVisitor {
+        /**
+         * @param values The noise of cell {@code <x0 + i, y0 + j>} is at {@code values[i * height + j]}. The array
+         *               is reused for the next tile on the same thread.
+         */
+        void visit(int x0, int y0, int width, int height, float[] values);
+    }
+
+    /**
+     * Computes the noise of every cell of a {@code width * height} grid, tile by tile, with the tiles spread over
+     * all cores. Cell {@code <x, y>} gets exactly {@code getNoise(x * step, y * step, ...)}. The visitor is called
+     * concurrently, with disjoint tiles.
+     */
+    public static void forEachTile(final int width, final int height, final double step, final double persistence,
+                                   final int firstOctave, final int lastOctave, final long seed,
+                                   final TileVisitor visitor) {
+        final int columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        final int rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+        final ThreadLocal<Sampler> samplers =
+                ThreadLocal.withInitial(() -> new Sampler(persistence, firstOctave, lastOctave, seed));
+        IntStream.range(0, columns * rows).parallel().forEach(t -> {
+            final int x0 = t / rows * TILE_SIZE;
+            final int y0 = t % rows * TILE_SIZE;
+            final int w = Math.min(TILE_SIZE, width - x0);
+            final int h = Math.min(TILE_SIZE, height - y0);
+            final float[] values = TILE_BUFFERS.get();
+            samplers.get().fill(values, h, x0, y0, w, h, step);
+            visitor.visit(x0, y0, w, h, values);
+        });
+    }
+
+    /**
+     * Fills {@code dst}, indexed {@code [x][y]}, with the noise of {@code forEachTile}.
+     */
+    public static void fill(final float[][] dst, final double step, final double persistence,
+                            final int firstOctave, final int lastOctave, final long seed) {
+        forEachTile(dst.length, 0 == dst.length ? 0 : dst[0].length, step, persistence, firstOctave, lastOctave,
+                seed, (x0, y0, w, h, values) -> {
+                    for (int i = 0; i < w; i++) {
+                        System.arraycopy(values, i * h, dst[x0 + i], y0, h);
+                    }
+                });
+    }
+
+    /**
+     * Computes {@code getNoise} over a rectangle of regularly spaced points at a time, without allocating once its
+     * buffers have grown to size. For every octave, the gradients of the lattice points under the rectangle are
+     * computed once into a table, and the lattice coordinates and fade weights once per column and per row, so
+     * that each point costs four table lookups and the interpolation. Not thread safe; use one per thread.
+     */
+    public static final class Sampler {
+        private final double persistence;
+        private final int firstOctave;
+        private final int lastOctave;
+        private final long seed;
+        private double[] sums = new double[0];
+        private double[] gradientX = new double[0];
+        private double[] gradientY = new double[0];
+        private long[] columnLattice = new long[0];
+        private double[] columnValue = new double[0];
+        private double[] columnFade = new double[0];
+        private long[] rowLattice = new long[0];
+        private double[] rowValue = new double[0];
+        private double[] rowFade = new double[0];
+
+        public Sampler(final double persistence, final int firstOctave, final int lastOctave, final long seed) {
+            this.persistence = persistence;
+            this.firstOctave = firstOctave;
+            this.lastOctave = lastOctave;
+            this.seed = seed;
+        }
+
+        /**
+         * Writes {@code getNoise((x0 + i) * step, (y0 + j) * step, ...)} to {@code dst[i * stride + j]}, for
+         * {@code i} below {@code width} and {@code j} below {@code height}.
+         */
+        public void fill(final float[] dst, final int stride, final int x0, final int y0, final int width,
+                         final int height, final double step) {
+            ensureCapacity(width, height);
+            Arrays.fill(this.sums, 0, width * height, 0.0);
+            double ampSum = 0.0;
+            double ampl = this.persistence;
+            for (int o = this.firstOctave; o <= this.lastOctave; o++) {
+                addOctave(1 << o, ampl, x0, y0, step, width, height);
+                ampSum += ampl;
+                ampl *= this.persistence;
+            }
+            for (int i = 0; i < width; i++) {
+                for (int j = 0; j < height; j++) {
+                    dst[i * stride + j] = (float) (this.sums[i * height + j] / ampSum);
+                }
+            }
+        }
+
+        private void ensureCapacity(final int width, final int height) {
+            if (this.sums.length < width * height) {
+                this.sums = new double[width * height];
+            }
+            if (this.columnLattice.length < width) {
+                this.columnLattice = new long[width];
+                this.columnValue = new double[width];
+                this.columnFade = new double[width];
+            }
+            if (this.rowLattice.length < height) {
+                this.rowLattice = new long[height];
+                this.rowValue = new double[height];
+                this.rowFade = new double[height];
+            }
+        }
+
+        private static void axis(final int frequency, final int origin, final double step, final int n,
+                                 final long[] lattice, final double[] value, final double[] fade) {
+            for (int i = 0; i < n; i++) {
+                value[i] = (origin + i) * step * frequency;
+                lattice[i] = (long) value[i];
+                final double w = value[i] - lattice[i];
+                fade[i] = (w * (w * 6.0 - 15.0) + 10.0) * w * w * w;
+            }
+        }
 
-        Vector2(double x, double y) {
-            this.x = x;
-            this.y = y;
+        private void addOctave(final int frequency, final double ampl, final int x0, final int y0,
+                               final double step, final int width, final int height) {
+            axis(frequency, x0, step, width, this.columnLattice, this.columnValue, this.columnFade);
+            axis(frequency, y0, step, height, this.rowLattice, this.rowValue, this.rowFade);
+            final long minX = Math.min(this.columnLattice[0], this.columnLattice[width - 1]);
+            final long minY = Math.min(this.rowLattice[0], this.rowLattice[height - 1]);
+            final long spanX = Math.abs(this.columnLattice[width - 1] - this.columnLattice[0]) + 2;
+            final long spanY = Math.abs(this.rowLattice[height - 1] - this.rowLattice[0]) + 2;
+            if (spanX * spanY > MAX_GRADIENT_TABLE) {
+                // Sparser than the lattice; a table would cost more than it saves.
+                for (int i = 0; i < width; i++) {
+                    for (int j = 0; j < height; j++) {
+                        this.sums[i * height + j] += perlin(this.columnValue[i], this.rowValue[j], this.seed) * ampl;
+                    }
+                }
+                return;
+            }
+            final int ny = (int) spanY;
+            final int points = (int) (spanX * spanY);
+            if (this.gradientX.length < points) {
+                this.gradientX = new double[points];
+                this.gradientY = new double[points];
+            }
+            for (int gx = 0; gx < spanX; gx++) {
+                for (int gy = 0; gy < ny; gy++) {
+                    final double angle = gradientAngle(minX + gx, minY + gy, this.seed);
+                    this.gradientX[gx * ny + gy] = Math.cos(angle);
+                    this.gradientY[gx * ny + gy] = Math.sin(angle);
+                }
+            }
+            for (int i = 0; i < width; i++) {
+                final int g0 = (int) (this.columnLattice[i] - minX) * ny;
+                final int g1 = g0 + ny;
+                final double dx0 = this.columnValue[i] - this.columnLattice[i];
+                final double dx1 = this.columnValue[i] - (this.columnLattice[i] + 1);
+                final double fadeX = this.columnFade[i];
+                for (int j = 0; j < height; j++) {
+                    final int row = (int) (this.rowLattice[j] - minY);
+                    final double dy0 = this.rowValue[j] - this.rowLattice[j];
+                    final double dy1 = this.rowValue[j] - (this.rowLattice[j] + 1);
+                    final double n00 = dx0 * this.gradientX[g0 + row] + dy0 * this.gradientY[g0 + row];
+                    final double n01 = dx1 * this.gradientX[g1 + row] + dy0 * this.gradientY[g1 + row];
+                    final double n10 = dx0 * this.gradientX[g0 + row + 1] + dy1 * this.gradientY[g0 + row + 1];
+                    final double n11 = dx1 * this.gradientX[g1 + row + 1] + dy1 * this.gradientY[g1 + row + 1];
+                    final double ix0 = (n01 - n00) * fadeX + n00;
+                    final double ix1 = (n11 - n10) * fadeX + n10;
+                    this.sums[i * height + j] += (((ix1 - ix0) * this.rowFade[j] + ix0) * 0.5 + 0.5) * ampl;
+                }
+            }
         }
     }
 }
@@ -17,4 +17,14 @@ public enum Hasher {
         }
         return h;
     }
+
+    /**
+     * Mixes {@code value} into the running hash {@code h}, one round of the mixing used by {@code hash}. Cheap
+     * enough to fold large amounts of state into a digest, but not a finished hash on its own.
+     */
+    public static long mix(final long h, final long value) {
+        long m = (h + value) * SQRT3;
+        m ^= m >>> 28;
+        return m;
+    }
 }
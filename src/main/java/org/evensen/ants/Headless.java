@@ -0,0 +1,175 @@
+package org.evensen.ants;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Runs a simulation without any user interface, as fast as possible, and reports the throughput.
+ * <p>
+ * Usage: {@code java -cp <classes> org.evensen.ants.Headless [--config=<file>] [--key=value ...]
+ * [--resume=<checkpoint>] [--save=<checkpoint>] [--record=<log>] [--replay=<log>] [--trajectories=<file>]
+ * [--chunked=<directory>]}, see
+ * {@code SimulationConfig} for the keys. With {@code --resume} the simulation continues from a checkpoint, with the
+ * configuration it was taken with, for {@code epochs} more epochs. With {@code --save} a checkpoint is written at the
+ * first dispersal after the last epoch. With {@code --record} the run is recorded to a replay log, and
+ * {@code --replay} re-runs such a log instead of a new simulation, exiting with status 1 at the first epoch that
+ * comes out differently. With {@code --trajectories} the path of every ant is recorded, see
+ * {@code TrajectoryRecorder}. With {@code --chunked=<directory>} the world is a {@code ChunkedAntWorld} spilling
+ * to the given directory, which can be far larger than memory; it can't be combined with checkpoints or replay logs.
+ * No JavaFX classes are loaded.
+ * </p>
+ */
+public enum Headless {
+    ;
+
+    public static void main(final String[] args) throws IOException, InterruptedException, ExecutionException {
+        final List<String> configArgs = new ArrayList<>();
+        Path resume = null;
+        Path save = null;
+        Path record = null;
+        Path replay = null;
+        Path trajectories = null;
+        Path chunked = null;
+        for (final String arg : args) {
+            if (arg.startsWith("--resume=")) {
+                resume = Path.of(arg.substring("--resume=".length()));
+            } else if (arg.startsWith("--save=")) {
+                save = Path.of(arg.substring("--save=".length()));
+            } else if (arg.startsWith("--record=")) {
+                record = Path.of(arg.substring("--record=".length()));
+            } else if (arg.startsWith("--replay=")) {
+                replay = Path.of(arg.substring("--replay=".length()));
+            } else if (arg.startsWith("--trajectories=")) {
+                trajectories = Path.of(arg.substring("--trajectories=".length()));
+            } else if (arg.startsWith("--chunked=")) {
+                chunked = Path.of(arg.substring("--chunked=".length()));
+            } else {
+                configArgs.add(arg);
+            }
+        }
+        if (null != replay) {
+            replay(replay);
+            return;
+        }
+        final SimulationConfig config;
+        try {
+            config = SimulationConfig.fromArgs(configArgs.toArray(new String[0]));
+        } catch (final IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        if (null != chunked) {
+            if (null != resume || null != save || null != record) {
+                System.err.println("A chunked world can't be checkpointed or recorded");
+                System.exit(2);
+                return;
+            }
+            runChunked(config, chunked, trajectories);
+            return;
+        }
+
+        final Simulation simulation;
+        if (null != resume) {
+            simulation = Simulation.restore(resume);
+            System.out.println("Resuming " + simulation.getConfig() + " at epoch " + simulation.getEpoch());
+        } else {
+            simulation = new Simulation(config);
+            System.out.println("Running " + config);
+        }
+        if (null != record) {
+            if (null != resume) {
+                System.err.println("A resumed simulation can't be recorded");
+                System.exit(2);
+                return;
+            }
+            simulation.startRecording(record);
+        }
+        final TrajectoryRecorder trajectoryRecorder =
+                null == trajectories ? null : new TrajectoryRecorder(trajectories);
+        simulation.getColony().setTrajectoryRecorder(trajectoryRecorder);
+        final long startSteps = simulation.getAntSteps();
+        final long startTime = System.nanoTime();
+        for (long i = 0; i < config.getEpochs(); i++) {
+            simulation.step();
+        }
+        final double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+        simulation.stopRecording();
+        if (null != trajectoryRecorder) {
+            simulation.getColony().setTrajectoryRecorder(null);
+            trajectoryRecorder.close();
+        }
+
+        System.out.println("Epochs: " + config.getEpochs() + " in " + seconds + " s");
+        System.out.println("Epochs per second: " + config.getEpochs() / seconds);
+        System.out.println("Ant steps per second: " + (simulation.getAntSteps() - startSteps) / seconds);
+        System.out.println("Food delivered: " + simulation.getWorld().getFoodCount());
+
+        if (null != save) {
+            final CompletableFuture<Path> written = simulation.requestCheckpoint(save);
+            while (simulation.isCheckpointPending()) {
+                simulation.step();
+            }
+            written.get();
+            System.out.println("Checkpoint at epoch " + simulation.getEpoch() + " written to " + save);
+        }
+    }
+
+    // Runs the epochs of a Simulation by hand, as Simulation only runs on a MyAntWorld
+    private static void runChunked(final SimulationConfig config, final Path spillDirectory,
+                                   final Path trajectories) throws IOException {
+        // Same density of food sources as the configured world would have
+        final float foodChance = (float) Math.min(1.0, (double) config.getFoodSources()
+                * ChunkedAntWorld.CHUNK_SIZE * ChunkedAntWorld.CHUNK_SIZE / config.getWidth() / config.getHeight());
+        try (ChunkedAntWorld world = new ChunkedAntWorld(config.getWidth(), config.getHeight(), foodChance,
+                new MyDispersalPolicy(config.getPheromoneDropoff(), config.getPheromoneNeighbourKeep()),
+                List.of(new Position((float) config.getWidth(), (float) config.getHeight() / 2.0F)),
+                config.getSeed(), config.getTerrain(), ChunkedAntWorld.DEFAULT_MAX_RESIDENT_CHUNKS,
+                spillDirectory)) {
+            System.out.println("Running chunked " + config);
+            final AntColony colony = new AntColony(config.getAnts(), config.getPheromoneRate(), world,
+                    Hasher.hash(config.getSeed(), 1L), config.getAntTuning());
+            final TrajectoryRecorder trajectoryRecorder =
+                    null == trajectories ? null : new TrajectoryRecorder(trajectories);
+            colony.setTrajectoryRecorder(trajectoryRecorder);
+            long antSteps = 0;
+            final long startTime = System.nanoTime();
+            for (long epoch = 1; epoch <= config.getEpochs(); epoch++) {
+                antSteps += colony.getAnts().size();
+                colony.updateAnts(world);
+                if (0 == epoch % config.getDispersalInterval()) {
+                    world.dispersePheromones();
+                }
+            }
+            final double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+            if (null != trajectoryRecorder) {
+                colony.setTrajectoryRecorder(null);
+                trajectoryRecorder.close();
+            }
+
+            final long[] chunks = world.getChunkCounts();
+            System.out.println("Epochs: " + config.getEpochs() + " in " + seconds + " s");
+            System.out.println("Epochs per second: " + config.getEpochs() / seconds);
+            System.out.println("Ant steps per second: " + antSteps / seconds);
+            System.out.println("Food delivered: " + world.getFoodCount());
+            System.out.println("Chunks resident: " + world.getResidentChunks() + ", generated: " + chunks[0] +
+                    ", read back: " + chunks[1] + ", spilled: " + chunks[2]);
+        }
+    }
+
+    private static void replay(final Path log) throws IOException {
+        final long startTime = System.nanoTime();
+        final ReplayLog.Result result = ReplayLog.replay(log);
+        final double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+        if (result.matches()) {
+            System.out.println("Replayed " + result.epochs() + " epochs in " + seconds + " s, all identical");
+        } else {
+            System.out.println("Replay diverged at epoch " + result.firstMismatch());
+            System.exit(1);
+        }
+    }
+}
@@ -1,11 +1,21 @@
 package org.evensen.ants;
 
 import java.util.random.RandomGenerator.SplittableGenerator;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
 /**
  * An implementation of a very fast, long period generator,
  * "Konadare192Px++".
+ * <p>
+ * The {@code a} word is a Weyl counter, advanced by an odd constant on every draw, so its position can be jumped
+ * in O(1). Substreams are built on that: substream {@code i} is this generator with its counter {@code (i + 1)}
+ * strides of 2<sup>40</sup> draws ahead. The counter comes round after 2<sup>24</sup> strides, so there are
+ * 2<sup>24</sup> - 1 substreams, {@code 0} to {@code 2^24 - 2}. Their counters and that of this generator
+ * never meet within 2<sup>40</sup> draws each, and the chaotic {@code b} and {@code c} words take the differing
+ * counters in within a few draws, which are discarded. {@code splits} hands out substreams of a copy of this
+ * generator, so they can be created in any order, on any thread.
+ * </p>
  */
 public class Konadare192RNG implements SplittableGenerator {
     private static final long KONADARE192_INC = 0xBB67AE8584CAA73BL; /* SQRT3 */
@@ -13,6 +23,10 @@ public class Konadare192RNG implements SplittableGenerator {
     private static final int KONADARE192_R2 = 43;
     private static final long UMASK = (1L << 63) - 1;
     private static final long UMASK_I = (1L << 31) - 1;
+    private static final long SUBSTREAM_STRIDE = 1L << 40;
+    private static final long SUBSTREAMS = (1L << 24) - 1; // The last stride would come back to this generator.
+    private static final int SUBSTREAM_WARM_UP = 3;
+    private static final float FLOAT_UNIT = 0x1.0p-24f;
     private long a, b, c;
     private boolean hasNextGaussian;
     private double nextGaussian;
@@ -31,6 +45,20 @@ public class Konadare192RNG implements SplittableGenerator {
         this.c = c;
     }
 
+    /**
+     * Recreates a generator from the state returned by {@code getState()}.
+     */
+    public static Konadare192RNG fromState(final long a, final long b, final long c) {
+        return new Konadare192RNG(a, b, c);
+    }
+
+    /**
+     * @return The generator's internal state {@code {a, b, c}}, for checkpointing.
+     */
+    public long[] getState() {
+        return new long[]{this.a, this.b, this.c};
+    }
+
     private static void mix(final long[] arr) {
         long acc = arr[arr.length - 1];
         for (int i = 1; i <= 3; i++) {
@@ -66,19 +94,57 @@ public class Konadare192RNG implements SplittableGenerator {
         return split();
     }
 
+    /**
+     * Advances the {@code a} counter by {@code steps} draws, in O(1). The {@code b} and {@code c} words are left as
+     * they are, so this moves to another stream rather than to the output {@code steps} draws ahead.
+     */
+    public void jump(final long steps) {
+        this.a += steps * KONADARE192_INC;
+    }
+
+    /**
+     * Gives substream {@code index} of this generator, without changing it. The same index always gives the same
+     * substream, and different indexes give non-overlapping ones, see the class description.
+     *
+     * @param index In {@code [0, 2^24 - 1)}.
+     * @throws IllegalArgumentException if {@code index} is out of range.
+     */
+    public Konadare192RNG substream(final long index) {
+        if (0 > index || SUBSTREAMS <= index) {
+            throw new IllegalArgumentException("substream index must be in [0, " + SUBSTREAMS + ") (was " + index +
+                    ")");
+        }
+        final Konadare192RNG s = new Konadare192RNG(this.a, this.b, this.c);
+        s.jump((index + 1) * SUBSTREAM_STRIDE);
+        for (int i = 0; i < SUBSTREAM_WARM_UP; i++) {
+            s.nextLong();
+        }
+        return s;
+    }
+
     @Override
     public Stream<SplittableGenerator> splits(final long streamSize) {
-        return null;
+        return splits(streamSize, this);
     }
 
     @Override
     public Stream<SplittableGenerator> splits(final SplittableGenerator source) {
-        return null;
+        return splits(Long.MAX_VALUE, source);
     }
 
+    /**
+     * Gives substreams 0, 1, 2, ... of a copy of this generator, which then advances by one draw so that the next
+     * call gives other substreams. The stream ends after the last substream, at 2<sup>24</sup> - 1 generators at
+     * most. Like {@code split(source)}, {@code source} is not used.
+     */
     @Override
     public Stream<SplittableGenerator> splits(final long streamSize, final SplittableGenerator source) {
-        return null;
+        if (0 > streamSize) {
+            throw new IllegalArgumentException("size must be non-negative (was " + streamSize + ")");
+        }
+        final Konadare192RNG base = new Konadare192RNG(this.a, this.b, this.c);
+        this.nextLong();
+        return LongStream.range(0, Math.min(streamSize, SUBSTREAMS)).mapToObj(base::substream);
     }
 
 
@@ -146,18 +212,46 @@ public class Konadare192RNG implements SplittableGenerator {
     }
 
     /**
-     * Reasonably good approximation of a standard normal random variate.
-     * Do not use for critical simulations -- both for performance and statistical reasons.
-     * @return A pseudo random {@code double} (quite) closely following the distribution of N(0, 1).
+     * Gives a standard normal variate, by the ziggurat method.
+     * @return A pseudo random {@code double} following the distribution of N(0, 1).
      */
     @Override
     public double nextGaussian() {
-        final int terms = 5;
-        double acc = 0.0;
-        for (int i = 0; i < terms; i++) {
-            acc += nextDouble();
+        return Ziggurat.sample(this);
+    }
+
+    /**
+     * Fills {@code dst[off, off + len)} with {@code float} variates uniform on {@code [0, 1)}. Each draw gives two
+     * 24 bit floats, and the state is kept in locals for the whole loop.
+     */
+    public void nextFloats(final float[] dst, final int off, final int len) {
+        long a = this.a;
+        long b = this.b;
+        long c = this.c;
+        final int end = off + len;
+        for (int i = off; i < end; i += 2) {
+            final long out = b ^ c;
+            final long a0 = a ^ (a >>> 32);
+            a += KONADARE192_INC;
+            b = Long.rotateRight(b + a0, KONADARE192_R1);
+            c = Long.rotateRight(c + b, KONADARE192_R2);
+            dst[i] = (out >>> 40) * FLOAT_UNIT;
+            if (i + 1 < end) {
+                dst[i + 1] = ((out >>> 16) & 0xFFFFFF) * FLOAT_UNIT;
+            }
+        }
+        this.a = a;
+        this.b = b;
+        this.c = c;
+    }
+
+    /**
+     * Fills {@code dst[off, off + len)} with standard normal variates.
+     */
+    public void nextGaussians(final float[] dst, final int off, final int len) {
+        for (int i = off; i < off + len; i++) {
+            dst[i] = (float) Ziggurat.sample(this);
         }
-        return (acc - (terms * 0.5)) * (12.0 / terms);
     }
 
 }
@@ -7,6 +7,7 @@ import javafx.geometry.Insets;
 import javafx.geometry.Rectangle2D;
 import javafx.scene.Scene;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.StackPane;
@@ -21,22 +22,26 @@ import org.evensen.ants.render.AntWorldRenderer;
 import org.evensen.ants.render.FoodRenderer;
 import org.evensen.ants.render.ObstacleRenderer;
 
-import java.util.Collection;
-import java.util.LinkedList;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.locks.LockSupport;
 
 public class Main extends Application {
     private static final int WORLD_WIDTH = 400;
     private static final int WORLD_HEIGHT = 200;
     private static final int ANTS = 10000;
     private static final float PHEROMONE_RATE = 0.7f;
+    private static final int DENSITY_RENDERING_THRESHOLD = 50000; // Draw a heatmap instead of every ant above this.
     private static final long MODEL_UPDATE_INTERVAL = 10_000_000L; // Update every 10 ms.
+    private static final long MODEL_START_DELAY = 5_000_000_000L;
+    private static final int MODEL_MAX_CATCH_UP = 5; // Run at most this many overdue epochs back to back.
+    private static final long MODEL_STOP_TIMEOUT = 1000L; // Milliseconds to wait for the last epoch on close.
     private static final long VIEW_UPDATE_INTERVAL = 40_000_000L; // Update every 25 ms.
     private static final double MARGIN = 20.0;
     private static final int FOOD_SOURCES = Math.max(2, (WORLD_WIDTH * WORLD_HEIGHT / 50000));
+    private static final int DISPERSAL_INTERVAL = 5;
 
+    private final Simulation simulation;
     private final AntWorld world;
     //
     // Pencil radius is 2% of the world size.
@@ -44,89 +49,56 @@ public class Main extends Application {
     private static final float PENCIL_RADIUS = ((WORLD_WIDTH * 0.02f) + (WORLD_HEIGHT * 0.02f)) / 4.0f;
 
 
-    private final AntColony colony;
     private final boolean drawAnts;
     private final ObstacleRenderer obstacleRenderer;
+    private final AntWorldRenderer worldRenderer;
     private final FoodRenderer foodRenderer;
-    private long epochCounter;
-    private long lastModelUpdate;
     private long lastViewUpdate;
     private int frame;
     private long lastFrameReset;
-    private final AtomicBoolean modelShouldBeRunning;
-    private Collection<AntHazard> hazards;
+    private final ModelScheduler scheduler;
+    private Thread modelThread;
 
     public Main() {
-        DispersalPolicy dispersalPolicy = new MyDispersalPolicy();
         // Create a new world with size WORLD_WIDTH * WORLD_HEIGHT and 4 food sources.
-        this.world = new MyAntWorld(WORLD_WIDTH, WORLD_HEIGHT, 4, dispersalPolicy);
-
-        this.colony = new AntColony(ANTS, PHEROMONE_RATE, this.world);
+        this.simulation = new Simulation(new SimulationConfig(WORLD_WIDTH, WORLD_HEIGHT, ANTS, 4, PHEROMONE_RATE,
+                Long.MAX_VALUE, DISPERSAL_INTERVAL));
+        this.world = this.simulation.getWorld();
         this.drawAnts = true;
         this.obstacleRenderer = new ObstacleRenderer();
+        this.worldRenderer = new AntWorldRenderer();
         this.foodRenderer = new FoodRenderer();
-        this.epochCounter = 1;
-        this.hazards = new LinkedList<>();
-        this.hazards.add(new AntHazard() {
-            private int x = WORLD_WIDTH / 2;
-            private int y = WORLD_HEIGHT / 2;
-
-            @Override
-            public void update(final AntWorld w) {
-                // this.x = (this.x + 1) % WORLD_WIDTH;
-            }
-
-            @Override
-            public Position getPosition() {
-                return new Position(this.x, this.y);
-            }
-
-            @Override
-            public float getRadius() {
-                return 10;
-            }
-
-            @Override
-            public void damage(final Ant a) {
-                if (!a.isDead()) {
-                    System.out.println("Hit at " + a.getPosition());
-                    a.damage(10);
-                }
-            }
-        });
-        this.modelShouldBeRunning = new AtomicBoolean(false);
+        this.simulation.addHazard(new FixedHazard(new Position(WORLD_WIDTH / 2, WORLD_HEIGHT / 2), 10, 10));
+        this.simulation.enableSnapshots();
+        this.scheduler = new ModelScheduler(this.simulation, MODEL_UPDATE_INTERVAL, MODEL_MAX_CATCH_UP);
     }
 
-    private void startModelTimer() {
-        final Timer timer = new Timer();
-        this.modelShouldBeRunning.set(true);
-
-        final TimerTask modelUpdate = new java.util.TimerTask() {
-
-            @Override
-            public void run() {
-                if (Main.this.modelShouldBeRunning.get()) {
-                    final long now = System.nanoTime();
-                    final long elapsedModelNanos = now - Main.this.lastModelUpdate;
-                    if (MODEL_UPDATE_INTERVAL < elapsedModelNanos) {
-                        synchronized (Main.this.colony) {
-                            Main.this.colony.updateAnts(Main.this.world);
-                        }
-                        if (0 == Main.this.epochCounter % 5) {
-                            Main.this.world.dispersePheromones();
-//                            Main.this.obstacleRenderer.dirty();
-                        }
-                        //   updateHazards();
-                        Main.this.lastModelUpdate = now;
-                        Main.this.epochCounter++;
-                    }
-                } else {
-                    cancel();
-                }
+    /**
+     * Runs the model on a thread of its own. It shares nothing with the FX thread but the published snapshots and
+     * the queued obstacle edits, so rendering never holds it up.
+     */
+    private void startModelThread() {
+        this.modelThread = new Thread(() -> {
+            LockSupport.parkNanos(MODEL_START_DELAY);
+            this.scheduler.run();
+            try {
+                this.simulation.stopRecording();
+            } catch (final IOException e) {
+                System.err.println("Could not close the replay log: " + e.getMessage());
             }
-        };
+        }, "simulation");
+        this.modelThread.setDaemon(true);
+        this.modelThread.start();
+    }
 
-        timer.scheduleAtFixedRate(modelUpdate, 0, MODEL_UPDATE_INTERVAL / 1_000_000);
+    private void stopModelThread() {
+        this.scheduler.stop();
+        LockSupport.unpark(this.modelThread);
+        try {
+            this.modelThread.join(MODEL_STOP_TIMEOUT);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     @Override
@@ -144,7 +116,12 @@ public class Main extends Application {
         final Camera camera = canvas.getCamera();
         final CameraController cameraController = canvas.createCameraController();
 
-        startModelTimer();
+        // --record=<file> records the run, mouse edits included, for Headless --replay.
+        final String record = getParameters().getNamed().get("record");
+        if (null != record) {
+            this.simulation.startRecording(Path.of(record));
+        }
+        startModelThread();
 
         final EventHandler<MouseEvent> mouseEventHandler = (event) -> {
 
@@ -161,15 +138,10 @@ public class Main extends Application {
             for (float x = -PENCIL_RADIUS; PENCIL_RADIUS > x; x += 1.0f) {
                 for (float y = -PENCIL_RADIUS; PENCIL_RADIUS > y; y += 1.0f) {
                     if (PENCIL_RADIUS * PENCIL_RADIUS > x * x + y * y) {
-                        Main.this.world.setObstacle(p.offset(x, y), !event.isShiftDown());
+                        Main.this.simulation.setObstacle(p.offset(x, y), !event.isShiftDown());
                     }
                 }
             }
-
-            //
-            // Mark obstacle renderer as dirty.
-            //
-            Main.this.obstacleRenderer.dirty();
         };
 
         canvas.setOnMouseDragged(mouseEventHandler);
@@ -180,17 +152,23 @@ public class Main extends Application {
             // This method called by FX, parameter is the current time
             @Override
             public void handle(final long now) {
-                final long elapsedModelNanos = now - Main.this.lastModelUpdate;
                 final long elapsedViewNanos = now - Main.this.lastViewUpdate;
                 if (VIEW_UPDATE_INTERVAL < elapsedViewNanos) {
+                    final SimulationSnapshot snapshot = Main.this.simulation.getLatestSnapshot();
+                    final WorldSnapshot world = snapshot.getWorld();
+                    final long epochs = Math.max(1, snapshot.getEpoch());
                     ++Main.this.frame;
                     if (1_000_000_000 < now - Main.this.lastFrameReset) {
                         final float antEfficiency = (float) (
-                                Main.this.world.getFoodCount() / (float) Main.this.epochCounter / ANTS *
-                                        Math.hypot(Main.this.world.getWidth(), Main.this.world.getHeight()));
+                                world.getFoodCount() / (float) epochs / ANTS *
+                                        Math.hypot(world.getWidth(), world.getHeight()));
+                        final ModelScheduler scheduler = Main.this.scheduler;
                         System.out.println(
                                 "frames per second: " + Main.this.frame + ", ant efficiency: " + antEfficiency + " (" +
-                                        Main.this.epochCounter + " epochs)");
+                                        epochs + " epochs), " + scheduler.getMode() + " x" +
+                                        scheduler.getMultiplier() + ": " + Math.round(scheduler.getAchievedRate()) +
+                                        " epochs per second, lag " + scheduler.getLagNanos() / 1_000_000 +
+                                        " ms, dropped " + scheduler.getDroppedEpochs() + " epochs");
                         Main.this.frame = 0;
                         Main.this.lastFrameReset = now;
                     }
@@ -226,13 +204,14 @@ public class Main extends Application {
                     g.save();
                     g.setGlobalAlpha(0.75);
 
-                    synchronized (Main.this.world) {
-                        Main.this.obstacleRenderer.render(g, Main.this.world);
-                        g.restore();
-                        AntWorldRenderer.render(g, Main.this.world);
-                        Main.this.foodRenderer.dirty();
-                        Main.this.foodRenderer.render(g, Main.this.world);
-                        AntColonyRenderer.render(g, Main.this.colony);
+                    Main.this.obstacleRenderer.render(g, world);
+                    g.restore();
+                    Main.this.worldRenderer.render(g, world, pheromoneDetailLevel(canvas, camera));
+                    Main.this.foodRenderer.render(g, world);
+                    if (DENSITY_RENDERING_THRESHOLD < ANTS) {
+                        AntColonyRenderer.renderDensity(g, snapshot.getColony());
+                    } else {
+                        AntColonyRenderer.render(g, snapshot.getColony());
                     }
 
                     g.restore();
@@ -243,7 +222,28 @@ public class Main extends Application {
 
         final Scene scene = new Scene(root);
 
-        scene.setOnKeyPressed(cameraController.getKeyPressedEventHandler());
+        final EventHandler<KeyEvent> cameraKeyHandler = cameraController.getKeyPressedEventHandler();
+        scene.setOnKeyPressed(event -> {
+            //
+            // 1: real time, 2: twice as fast, 3: ten times as fast, 4: as fast as possible.
+            //
+            switch (event.getCode()) {
+                case DIGIT1:
+                    this.scheduler.setRealTime();
+                    break;
+                case DIGIT2:
+                    this.scheduler.setMultiplier(2.0);
+                    break;
+                case DIGIT3:
+                    this.scheduler.setMultiplier(10.0);
+                    break;
+                case DIGIT4:
+                    this.scheduler.setFastForward();
+                    break;
+                default:
+                    cameraKeyHandler.handle(event);
+            }
+        });
         scene.setOnKeyReleased(cameraController.getKeyReleasedEventHandler());
         canvas.setOnScroll(cameraController.getScrollEventHandler());
 
@@ -254,25 +254,18 @@ public class Main extends Application {
                 (float) (screenBounds.getHeight() - 2 * MARGIN) / WORLD_HEIGHT) * 0.5f;
         stage.setWidth(WORLD_WIDTH * scale + 2 * MARGIN);
         stage.setHeight(WORLD_HEIGHT * scale + 2 * MARGIN);
-        stage.setOnCloseRequest(event -> this.modelShouldBeRunning.set(false));
+        stage.setOnCloseRequest(event -> stopModelThread());
         stage.show();
 
         this.lastViewUpdate = System.nanoTime() + 500_000_000L;
-        this.lastModelUpdate = System.nanoTime() + 5_000_000_000L;
         timer.start();  // Start simulation
     }
 
-    private void updateHazards() {
-        synchronized (this.colony) {
-            for (AntHazard h : this.hazards) {
-                h.update(this.world);
-
-                for (Ant a : this.colony.getAnts()) {
-                    if (a.getPosition().isWithinRadius(h.getPosition(), h.getRadius())) {
-                        h.damage(a);
-                    }
-                }
-            }
-        }
+    /**
+     * Picks the coarsest pheromone level whose cells are still at least a screen pixel wide.
+     */
+    private static int pheromoneDetailLevel(final ResizeableCanvas canvas, final Camera camera) {
+        final double cellsPerPixel = WORLD_WIDTH * camera.getWidth() / Math.max(1.0, canvas.getWidth());
+        return 1.0 < cellsPerPixel ? 31 - Integer.numberOfLeadingZeros((int) cellsPerPixel) : 0;
     }
 }
\ No newline at end of file
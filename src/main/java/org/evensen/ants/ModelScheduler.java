@@ -0,0 +1,160 @@
+package org.evensen.ants;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decides when a {@code Simulation} steps, and keeps track of how well it keeps up.
+ * <p>
+ * In {@code REAL_TIME} and {@code MULTIPLIER} mode epochs are due at a fixed rate. If the model falls behind, up to
+ * {@code maxCatchUp} due epochs are run back to back; anything beyond that is dropped, and counted, rather than
+ * letting the backlog grow without bound. {@code FAST_FORWARD} runs epochs back to back without any schedule.
+ * </p>
+ * Pheromones disperse every {@code SimulationConfig.getDispersalInterval()} epochs of model time, so the model behaves the same
+ * whatever the mode; only the wall clock time between epochs changes.
+ * The scheduler runs on the thread calling {@code run()}; modes may be changed and statistics read from any thread.
+ */
+public final class ModelScheduler implements Runnable {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    public enum Mode {
+        REAL_TIME,
+        MULTIPLIER,
+        FAST_FORWARD
+    }
+
+    private final Simulation simulation;
+    private final long epochInterval;
+    private final int maxCatchUp;
+    private volatile Mode mode;
+    private volatile double multiplier;
+    private volatile boolean running;
+
+    // Statistics, written by the scheduling thread only
+    private volatile long lagNanos;
+    private volatile double achievedRate;
+    private volatile long droppedEpochs;
+
+    /**
+     * @param simulation    The simulation to step.
+     * @param epochInterval Wall clock time per epoch in real time, in nanoseconds.
+     * @param maxCatchUp    Largest number of overdue epochs run back to back before the rest are dropped.
+     */
+    public ModelScheduler(final Simulation simulation, final long epochInterval, final int maxCatchUp) {
+        this.simulation = simulation;
+        this.epochInterval = epochInterval;
+        this.maxCatchUp = maxCatchUp;
+        this.mode = Mode.REAL_TIME;
+        this.multiplier = 1.0;
+        this.running = true;
+    }
+
+    public void setRealTime() {
+        this.mode = Mode.REAL_TIME;
+    }
+
+    /**
+     * Runs the model {@code multiplier} times faster than real time, e.g. 2 or 10.
+     */
+    public void setMultiplier(final double multiplier) {
+        if (0.0 >= multiplier) {
+            throw new IllegalArgumentException("Multiplier must be positive: " + multiplier);
+        }
+        this.multiplier = multiplier;
+        this.mode = Mode.MULTIPLIER;
+    }
+
+    public void setFastForward() {
+        this.mode = Mode.FAST_FORWARD;
+    }
+
+    public Mode getMode() {
+        return this.mode;
+    }
+
+    public double getMultiplier() {
+        return Mode.MULTIPLIER == this.mode ? this.multiplier : 1.0;
+    }
+
+    /**
+     * Makes {@code run()} return after the current batch.
+     */
+    public void stop() {
+        this.running = false;
+    }
+
+    /**
+     * @return How far behind schedule the last batch started, in nanoseconds. Always 0 when fast-forwarding.
+     */
+    public long getLagNanos() {
+        return this.lagNanos;
+    }
+
+    /**
+     * @return The number of epochs run per second, measured over roughly the last second.
+     */
+    public double getAchievedRate() {
+        return this.achievedRate;
+    }
+
+    /**
+     * @return The number of due epochs skipped so far because the model could not catch up.
+     */
+    public long getDroppedEpochs() {
+        return this.droppedEpochs;
+    }
+
+    @Override
+    public void run() {
+        Mode scheduledMode = null;
+        double scheduledMultiplier = 0.0;
+        long interval = this.epochInterval;
+        long scheduleStart = 0;
+        long scheduled = 0;
+        long rateStart = System.nanoTime();
+        long rateEpochs = 0;
+
+        while (this.running) {
+            final Mode m = this.mode;
+            final double mul = this.multiplier;
+            long now = System.nanoTime();
+            if (m != scheduledMode || mul != scheduledMultiplier) {
+                // Start a new schedule, so that a mode change neither bursts nor stalls.
+                scheduledMode = m;
+                scheduledMultiplier = mul;
+                interval = Mode.MULTIPLIER == m ? Math.max(1L, Math.round(this.epochInterval / mul))
+                        : this.epochInterval;
+                scheduleStart = now;
+                scheduled = 0;
+            }
+
+            int batch = 1;
+            if (Mode.FAST_FORWARD == m) {
+                this.lagNanos = 0;
+            } else {
+                final long due = (now - scheduleStart) / interval + 1 - scheduled;
+                if (0 >= due) {
+                    LockSupport.parkNanos(scheduleStart + scheduled * interval - now);
+                    continue;
+                }
+                this.lagNanos = now - (scheduleStart + scheduled * interval);
+                batch = (int) Math.min(due, this.maxCatchUp);
+                scheduled += due;
+                if (due > batch) {
+                    this.droppedEpochs += due - batch;
+                }
+            }
+
+            for (int i = 0; i < batch; i++) {
+                this.simulation.step();
+            }
+
+            rateEpochs += batch;
+            now = System.nanoTime();
+            if (NANOS_PER_SECOND <= now - rateStart) {
+                this.achievedRate = rateEpochs * (double) NANOS_PER_SECOND / (now - rateStart);
+                rateStart = now;
+                rateEpochs = 0;
+            }
+        }
+    }
+}
@@ -1,44 +1,170 @@
 package org.evensen.ants;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
 
 public class MyAntWorld implements AntWorld {
 
     // Constants
+    public static final long DEFAULT_SEED = 5L;
+    public static final int TILE_SIZE = 16;
     private static final int FOOD_SOURCE_RADIUS = 10;
     private static final int FOOD_SOURCE_START_AMOUNT = 50000;
     private static final float MAX_PHEROMONE_LEVEL = 1.0f;
-    private static final float PHEROMONE_DROPOFF = 0.95F;
-    private static final float PHEROMONE_NEIGHBOUR_KEEP = 0.5f;
     private static final float NUMBER_OF_NEIGHBOURS = 8.0f;
+    private static final int PYRAMID_LEVELS = 6;
+    private static final int GRADIENT_LEVEL = 3; // Gradients span three 8x8 blocks, like the scan's far samples.
+    private static final float NEGLIGIBLE_PHEROMONE_LEVEL = 1.0E-6f;
+    private static final float VISIBLE_PHEROMONE_LEVEL = 4.0E-6f; // Renders as less than half a 255th of opacity.
+    private static final int TILE_BITS = 4;
+    private static final float NEST_RADIUS = 20.0F;
+    private static final float FOOD_SENSING_DISTANCE = 64.0F;
+    private static final int FOOD_PLACEMENT_ATTEMPTS = 100;
+    private static final float NEST_CLEARANCE = 10.0F; // Terrain keeps this far from the homes.
+    private static final double TERRAIN_PERSISTENCE = 0.5;
+    private static final float TERRAIN_FINEST_FEATURE = 2.0F;
+    private static final int TERRAIN_THRESHOLD_SAMPLES = 1 << 16;
     private static final int[][] ADJACENT_CELL_DELTAS = {{-1,  1}, { 0,  1}, {1,  1},
                                                          {-1,  0}, /*CELL*/  {1,  0},
                                                          {-1, -1}, { 0, -1}, {1, -1}}; // Pls don't auto format :(
 
-    // Generators
-    private static final Random rand = new Random(5L);
-
     // Instance variables
     private final int width, height;
+    private Konadare192RNG rand;
     private float[][] foodPheromone;
     private float[][] foragingPheromone;
     private final int[][] containsFood;
     private final List<FoodSource> foodSources;
     private final DispersalPolicy dispersalPolicy;
+    private final float pheromoneDropoff;
+    private final float pheromoneNeighbourKeep;
+    private final PheromonePyramid foodPyramid;
+    private final PheromonePyramid foragingPyramid;
+    private final int gradientLevel;
+    private final float[][] foodGradientX, foodGradientY;
+    private final float[][] foragingGradientX, foragingGradientY;
+    private final boolean[][] obstacles;
+    private final List<Position> nests;
+    private final boolean[][] home;
+    private final DistanceField homeDistance;
+    private final DistanceField foodDistance;
+    private final int[][] deadAnts;
+    private long foodCount;
+    private long foodVersion;
+    private long obstacleVersion;
+    private long deadAntVersion;
+
+    // Pheromone tiles changed visibly since the last snapshot, and the snapshot stamp each tile last changed at
+    private final int tileColumns, tileRows;
+    private final boolean[] changedTiles;
+    private final long[] tileStamps;
+    private long pheromoneStamp;
+
+    // The obstacle version each tile last changed at
+    private final long[] obstacleTileVersions;
+
+    // Digests of the pheromone grids, rehashed lazily after each dispersal, and of the changes made in between
+    private long pheromoneDigest;
+    private boolean pheromoneDigestStale;
+    private long eventDigest;
+
+    /**
+     * Procedurally generated obstacles, thresholded fractal noise seeded with the world's seed.
+     *
+     * @param coverage    Share of the world to cover, {@code 0} for no terrain.
+     * @param featureSize Size of the largest features, in cells. Details go down to a couple of cells.
+     */
+    public record Terrain(float coverage, float featureSize) {
+        public static final Terrain NONE = new Terrain(0.0f, 64.0f);
+    }
 
     // Constructor, width of world, height of world, number of food sources
     public MyAntWorld(final int w, final int h, final int foodSources, final DispersalPolicy dispersalPolicy) {
+        this(w, h, foodSources, dispersalPolicy, DEFAULT_SEED);
+    }
+
+    // As above, with food sources placed by a generator seeded with the given seed
+    public MyAntWorld(final int w, final int h, final int foodSources, final DispersalPolicy dispersalPolicy,
+                      final long seed) {
+        this(w, h, foodSources, dispersalPolicy, seed, Terrain.NONE);
+    }
+
+    // As above, with obstacles generated from the seed as well
+    public MyAntWorld(final int w, final int h, final int foodSources, final DispersalPolicy dispersalPolicy,
+                      final long seed, final Terrain terrain) {
+        this(w, h, foodSources, dispersalPolicy, List.of(new Position((float) w, (float) h / 2.0F)), seed, terrain);
+    }
+
+    // As above, but with ant homes centered at each of the given nest positions
+    public MyAntWorld(final int w, final int h, final int foodSources, final DispersalPolicy dispersalPolicy,
+                      final List<Position> nests) {
+        this(w, h, foodSources, dispersalPolicy, nests, DEFAULT_SEED);
+    }
+
+    public MyAntWorld(final int w, final int h, final int foodSources, final DispersalPolicy dispersalPolicy,
+                      final List<Position> nests, final long seed) {
+        this(w, h, foodSources, dispersalPolicy, nests, seed, Terrain.NONE);
+    }
+
+    public MyAntWorld(final int w, final int h, final int foodSources, final DispersalPolicy dispersalPolicy,
+                      final List<Position> nests, final long seed, final Terrain terrain) {
         // Initialize instance variables and set capacity
         this.width = w;
         this.height = h;
+        this.rand = new Konadare192RNG(seed);
         this.foodPheromone = new float[w][h];
         this.foragingPheromone = new float[w][h];
         this.foodSources = new ArrayList<>(foodSources);
         this.containsFood = new int[w][h];
         this.dispersalPolicy = dispersalPolicy;
 
+        // The self-contained dispersal follows the same rule as MyDispersalPolicy, and its parameters if in use
+        final MyDispersalPolicy rule = dispersalPolicy instanceof MyDispersalPolicy m ? m : new MyDispersalPolicy();
+        this.pheromoneDropoff = rule.getPheromoneDropoff();
+        this.pheromoneNeighbourKeep = rule.getPheromoneNeighbourKeep();
+        this.foodPyramid = new PheromonePyramid(w, h, PYRAMID_LEVELS);
+        this.foragingPyramid = new PheromonePyramid(w, h, PYRAMID_LEVELS);
+        // One gradient per block of the pyramid level they are taken at
+        this.gradientLevel = Math.min(GRADIENT_LEVEL, this.foodPyramid.getLevels() - 1);
+        final int gradientWidth = this.foodPyramid.getMeans(this.gradientLevel).length;
+        final int gradientHeight = this.foodPyramid.getMeans(this.gradientLevel)[0].length;
+        this.foodGradientX = new float[gradientWidth][gradientHeight];
+        this.foodGradientY = new float[gradientWidth][gradientHeight];
+        this.foragingGradientX = new float[gradientWidth][gradientHeight];
+        this.foragingGradientY = new float[gradientWidth][gradientHeight];
+        this.obstacles = new boolean[w][h];
+        this.nests = List.copyOf(nests);
+        this.home = new boolean[w][h];
+        this.homeDistance = new DistanceField(w, h, Float.POSITIVE_INFINITY);
+        this.foodDistance = new DistanceField(w, h, FOOD_SENSING_DISTANCE);
+        this.deadAnts = new int[w][h];
+        this.tileColumns = (w + TILE_SIZE - 1) / TILE_SIZE;
+        this.tileRows = (h + TILE_SIZE - 1) / TILE_SIZE;
+        this.changedTiles = new boolean[this.tileColumns * this.tileRows];
+        this.tileStamps = new long[this.tileColumns * this.tileRows];
+        this.obstacleTileVersions = new long[this.tileColumns * this.tileRows];
+        Arrays.fill(this.changedTiles, true);
+
+        // Rasterize the homes once, so that isHome is a lookup
+        for (final Position nest : this.nests) {
+            final int minX = Math.max(0, (int) Math.floor(nest.getX() - NEST_RADIUS));
+            final int maxX = Math.min(w - 1, (int) Math.ceil(nest.getX() + NEST_RADIUS));
+            final int minY = Math.max(0, (int) Math.floor(nest.getY() - NEST_RADIUS));
+            final int maxY = Math.min(h - 1, (int) Math.ceil(nest.getY() + NEST_RADIUS));
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    if (new Position((float) x, (float) y).isWithinRadius(nest, NEST_RADIUS)) {
+                        this.home[x][y] = true;
+                        this.homeDistance.addSource(x, y);
+                    }
+                }
+            }
+        }
+
+        generateTerrain(terrain, seed);
+
         // Initialize food sources
         for (int i = 0; i < foodSources; i++) {
             final FoodSource source = newFoodSource();
@@ -47,13 +173,31 @@ public class MyAntWorld implements AntWorld {
 
         // Initialize contains food matrix
         updateContainsFoodMatrix();
+        this.homeDistance.update();
+        rebuildPyramids();
+        this.pheromoneDigestStale = true;
     }
 
     // Used for optimizing, through avoiding unnecessary multiple similar calculations
     // Contains the index of the food source that contains the associated food (-1 if there is no food)
     private void updateContainsFoodMatrix() {
-        for (int x = 0; x < this.width; x++) {
-            for (int y = 0; y < this.height; y++) {
+        updateContainsFoodMatrix(0, 0, this.width - 1, this.height - 1);
+    }
+
+    // Only updates the cells covered by the given source, keeping the food distance field in sync
+    private void updateContainsFoodMatrix(final FoodSource source) {
+        final Position sourceP = source.getPosition();
+        final int r = source.getRadius();
+        updateContainsFoodMatrix(
+                Math.max(0, (int) Math.floor(sourceP.getX() - r)), Math.max(0, (int) Math.floor(sourceP.getY() - r)),
+                Math.min(this.width - 1, (int) Math.ceil(sourceP.getX() + r)),
+                Math.min(this.height - 1, (int) Math.ceil(sourceP.getY() + r)));
+    }
+
+    private void updateContainsFoodMatrix(final int minX, final int minY, final int maxX, final int maxY) {
+        this.foodVersion++;
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
 
                 // Set every element to not contain food as default
                 this.containsFood[x][y] = -1;
@@ -76,8 +220,70 @@ public class MyAntWorld implements AntWorld {
                         this.containsFood[x][y] = i;
                     }
                 }
+
+                if (-1 == this.containsFood[x][y]) {
+                    this.foodDistance.removeSource(x, y);
+                } else {
+                    this.foodDistance.addSource(x, y);
+                }
+            }
+        }
+        this.foodDistance.update();
+    }
+
+    // Blocks the cells where fractal noise is above the level that gives the asked-for coverage, except near homes
+    private void generateTerrain(final Terrain terrain, final long seed) {
+        if (0 >= terrain.coverage()) {
+            return;
+        }
+        final double step = 1.0 / terrain.featureSize();
+        final int lastOctave = Math.max(0,
+                31 - Integer.numberOfLeadingZeros((int) (terrain.featureSize() / TERRAIN_FINEST_FEATURE)));
+        final long noiseSeed = Hasher.hash(seed, 3L);
+
+        // Estimate the threshold from a coarse sample of the same noise
+        final int stride = Math.max(1, (int) Math.sqrt((double) this.width * this.height / TERRAIN_THRESHOLD_SAMPLES));
+        final int sampleWidth = (this.width + stride - 1) / stride;
+        final int sampleHeight = (this.height + stride - 1) / stride;
+        final float[] samples = new float[sampleWidth * sampleHeight];
+        new FractalNoise.Sampler(TERRAIN_PERSISTENCE, 0, lastOctave, noiseSeed)
+                .fill(samples, sampleHeight, 0, 0, sampleWidth, sampleHeight, step * stride);
+        Arrays.sort(samples);
+        final float threshold = samples[Math.min(samples.length - 1,
+                (int) ((1.0f - Math.min(1.0f, terrain.coverage())) * samples.length))];
+
+        final float clearance = NEST_RADIUS + NEST_CLEARANCE;
+        FractalNoise.forEachTile(this.width, this.height, step, TERRAIN_PERSISTENCE, 0, lastOctave, noiseSeed,
+                (x0, y0, tileWidth, tileHeight, values) -> {
+                    for (int i = 0; i < tileWidth; i++) {
+                        for (int j = 0; j < tileHeight; j++) {
+                            if (values[i * tileHeight + j] > threshold &&
+                                    !isNearNest(x0 + i, y0 + j, clearance)) {
+                                this.obstacles[x0 + i][y0 + j] = true;
+                            }
+                        }
+                    }
+                });
+        for (int x = 0; x < this.width; x++) {
+            for (int y = 0; y < this.height; y++) {
+                if (this.obstacles[x][y]) {
+                    this.homeDistance.setBlocked(x, y, true);
+                    this.foodDistance.setBlocked(x, y, true);
+                }
+            }
+        }
+        this.obstacleVersion++;
+    }
+
+    private boolean isNearNest(final int x, final int y, final float radius) {
+        for (final Position nest : this.nests) {
+            final float dx = x - nest.getX();
+            final float dy = y - nest.getY();
+            if (dx * dx + dy * dy <= radius * radius) {
+                return true;
             }
         }
+        return false;
     }
 
     @Override
@@ -92,21 +298,47 @@ public class MyAntWorld implements AntWorld {
 
     @Override
     public boolean isObstacle(final Position p) {
-        return !p.isInBounds(this.width, this.height);
+        return !p.isInBounds(this.width, this.height) || this.obstacles[p.floorX()][p.floorY()];
     }
 
     @Override
     public void dropForagingPheromone(final Position p, final float amount) {
-        dropPheromone(this.foragingPheromone, p, amount);
+        dropPheromone(this.foragingPheromone, this.foragingPyramid, p, amount);
+        recordEvent(0, p, Float.floatToRawIntBits(amount));
+        markTile(p.floorX(), p.floorY());
     }
 
     @Override
     public void dropFoodPheromone(final Position p, final float amount) {
-        dropPheromone(this.foodPheromone, p, amount);
+        dropPheromone(this.foodPheromone, this.foodPyramid, p, amount);
+        recordEvent(1, p, Float.floatToRawIntBits(amount));
+        markTile(p.floorX(), p.floorY());
+    }
+
+    private int tile(final int x, final int y) {
+        return (x >> TILE_BITS) * this.tileRows + (y >> TILE_BITS);
+    }
+
+    private void markTile(final int x, final int y) {
+        this.changedTiles[tile(x, y)] = true;
+    }
+
+    // Marks the cell's tile if the cell was or will be visible
+    private void markDispersed(final int x, final int y, final float before, final float after) {
+        if (VISIBLE_PHEROMONE_LEVEL < before || VISIBLE_PHEROMONE_LEVEL < after) {
+            markTile(x, y);
+        }
+    }
+
+    // Folds a change of state into the event digest
+    private void recordEvent(final int type, final Position p, final int value) {
+        final long cell = (long) p.floorX() * this.height + p.floorY();
+        this.eventDigest = Hasher.mix(Hasher.mix(this.eventDigest, cell << 8 | type), value);
     }
 
     // Abstract drop pheromone method
-    private static void dropPheromone(final float[][] pheromoneMatrix, final Position p, final float amount) {
+    private static void dropPheromone(final float[][] pheromoneMatrix, final PheromonePyramid pyramid,
+                                      final Position p, final float amount) {
         // x & y floored indexes
         final int x = p.floorX();
         final int y = p.floorY();
@@ -120,10 +352,16 @@ public class MyAntWorld implements AntWorld {
         else {
             pheromoneMatrix[x][y] += amount;
         }
+
+        // Keep the pyramid maxima conservative until the next rebuild
+        pyramid.raise(x, y, pheromoneMatrix[x][y]);
     }
 
     @Override
-    public void dropFood(final Position p) { }
+    public void dropFood(final Position p) {
+        this.foodCount++;
+        recordEvent(2, p, 0);
+    }
 
     @Override
     public void pickUpFood(final Position p) {
@@ -135,22 +373,28 @@ public class MyAntWorld implements AntWorld {
         if (i != -1) {
             final FoodSource source = this.foodSources.get(i);
             source.pickupFood();
+            recordEvent(3, p, i);
 
             // If it was the last piece of food, create new source and update matrix
             if (!source.containsFood()) {
                 final FoodSource newSource = newFoodSource();
                 this.foodSources.set(i, newSource);
-                updateContainsFoodMatrix();
+                updateContainsFoodMatrix(source);
+                updateContainsFoodMatrix(newSource);
             }
         }
     }
 
     // Creates a new (randomly positioned) food reserve at index i (with default amount and radius)
     private FoodSource newFoodSource() {
-        // Random position for new food source
-        final float x = rand.nextFloat(0.0f, (float) (this.width - 1));
-        final float y = rand.nextFloat(0.0f, (float) (this.height - 1));
-        final Position p = new Position(x, y);
+        // Random position for new food source, off obstacles if one can be found
+        Position p;
+        int attempts = 0;
+        do {
+            final float x = this.rand.nextFloat(0.0f, (float) (this.width - 1));
+            final float y = this.rand.nextFloat(0.0f, (float) (this.height - 1));
+            p = new Position(x, y);
+        } while (this.obstacles[p.floorX()][p.floorY()] && ++attempts < FOOD_PLACEMENT_ATTEMPTS);
 
         // Set new food reserve
         return new FoodSource(FOOD_SOURCE_START_AMOUNT, p, FOOD_SOURCE_RADIUS);
@@ -158,7 +402,16 @@ public class MyAntWorld implements AntWorld {
 
     @Override
     public float getDeadAntCount(final Position p) {
-        return 0.0f;
+        return p.isInBounds(this.width, this.height) ? this.deadAnts[p.floorX()][p.floorY()] : 0.0f;
+    }
+
+    @Override
+    public void addDeadAnt(final Position p) {
+        if (p.isInBounds(this.width, this.height)) {
+            this.deadAnts[p.floorX()][p.floorY()]++;
+            this.deadAntVersion++;
+            recordEvent(4, p, 0);
+        }
     }
 
     @Override
@@ -171,6 +424,31 @@ public class MyAntWorld implements AntWorld {
         return this.foodPheromone[p.floorX()][p.floorY()];
     }
 
+    @Override
+    public float getForagingStrength(final Position p, final int level) {
+        return this.foragingPyramid.mean(p.floorX(), p.floorY(), level);
+    }
+
+    @Override
+    public float getFoodStrength(final Position p, final int level) {
+        return this.foodPyramid.mean(p.floorX(), p.floorY(), level);
+    }
+
+    @Override
+    public int getPheromoneLevels() {
+        return this.foodPyramid.getLevels();
+    }
+
+    @Override
+    public boolean hasPheromonesNear(final Position p, final float radius) {
+        final int x0 = (int) Math.floor(p.getX() - radius);
+        final int y0 = (int) Math.floor(p.getY() - radius);
+        final int x1 = (int) Math.floor(p.getX() + radius);
+        final int y1 = (int) Math.floor(p.getY() + radius);
+        return this.foodPyramid.anyAtLeast(x0, y0, x1, y1, NEGLIGIBLE_PHEROMONE_LEVEL)
+                || this.foragingPyramid.anyAtLeast(x0, y0, x1, y1, NEGLIGIBLE_PHEROMONE_LEVEL);
+    }
+
     // Simply checks the already calculated matrix
     @Override
     public boolean containsFood(final Position p) {
@@ -179,12 +457,37 @@ public class MyAntWorld implements AntWorld {
 
     @Override
     public long getFoodCount() {
-        return 0L;
+        return this.foodCount;
     }
 
     @Override
     public boolean isHome(final Position p) {
-        return p.isWithinRadius(new Position((float) this.width, (float) this.height / 2.0F), 20.0F);
+        return p.isInBounds(this.width, this.height) && this.home[p.floorX()][p.floorY()];
+    }
+
+    @Override
+    public List<Position> getNests() {
+        return this.nests;
+    }
+
+    @Override
+    public float getHomeDistance(final Position p) {
+        return this.homeDistance.getDistance(p.floorX(), p.floorY());
+    }
+
+    @Override
+    public float getHomeDirection(final Position p) {
+        return this.homeDistance.getDescentAngle(p.floorX(), p.floorY());
+    }
+
+    @Override
+    public float getFoodDistance(final Position p) {
+        return this.foodDistance.getDistance(p.floorX(), p.floorY());
+    }
+
+    @Override
+    public float getFoodDirection(final Position p) {
+        return this.foodDistance.getDescentAngle(p.floorX(), p.floorY());
     }
 
     public void dispersePheromones() {
@@ -203,6 +506,8 @@ public class MyAntWorld implements AntWorld {
                 // Update temp matrices
                 tmpFood[x][y] = newLevels[0];
                 tmpForage[x][y] = newLevels[1];
+                markDispersed(x, y, this.foodPheromone[x][y], newLevels[0]);
+                markDispersed(x, y, this.foragingPheromone[x][y], newLevels[1]);
             }
         }
 
@@ -210,6 +515,81 @@ public class MyAntWorld implements AntWorld {
         this.foodPheromone = tmpFood;
         this.foragingPheromone = tmpForage;
         dropFoodSourcePheromones();
+        rebuildPyramids();
+        updateGradients();
+        this.pheromoneDigestStale = true;
+    }
+
+    // Takes the gradients from block means, as the neighbours of a single cell are mostly specks of separate drops
+    private void updateGradients() {
+        computeGradients(this.foodPyramid.getMeans(this.gradientLevel), this.foodGradientX, this.foodGradientY);
+        computeGradients(this.foragingPyramid.getMeans(this.gradientLevel), this.foragingGradientX,
+                this.foragingGradientY);
+    }
+
+    // Sobel operator, which smooths across the direction it differentiates, scaled to the change per cell
+    private void computeGradients(final float[][] means, final float[][] gradientX, final float[][] gradientY) {
+        final int w = means.length;
+        final int h = means[0].length;
+        final float scale = 0.125F / (1 << this.gradientLevel);
+        for (int x = 0; x < w; x++) {
+            final float[] left = means[truncate(0, w - 1, x - 1)];
+            final float[] center = means[x];
+            final float[] right = means[truncate(0, w - 1, x + 1)];
+            for (int y = 0; y < h; y++) {
+                final int below = truncate(0, h - 1, y - 1);
+                final int above = truncate(0, h - 1, y + 1);
+                gradientX[x][y] = ((right[below] + 2.0F * right[y] + right[above])
+                        - (left[below] + 2.0F * left[y] + left[above])) * scale;
+                gradientY[x][y] = ((left[above] + 2.0F * center[above] + right[above])
+                        - (left[below] + 2.0F * center[below] + right[below])) * scale;
+            }
+        }
+    }
+
+    @Override
+    public float getPheromoneGradientAngle(final Position p, final float foodWeight, final float foragingWeight,
+                                           final float minMagnitude) {
+        final int x = p.floorX() >> this.gradientLevel;
+        final int y = p.floorY() >> this.gradientLevel;
+        final float gx = foodWeight * this.foodGradientX[x][y] + foragingWeight * this.foragingGradientX[x][y];
+        final float gy = foodWeight * this.foodGradientY[x][y] + foragingWeight * this.foragingGradientY[x][y];
+        if (gx * gx + gy * gy < minMagnitude * minMagnitude) {
+            return -1.0F;
+        }
+        final float angle = (float) Math.atan2(gy, gx);
+        return 0.0F > angle ? angle + GraphicsMath.TAU : angle;
+    }
+
+    /**
+     * @return A digest of the world's state. Food pickups, deliveries, carcasses, obstacle edits and pheromone
+     * drops are folded in as they happen; the pheromone grids themselves are only hashed on the first call after a
+     * dispersal, so the digest costs nothing until it is asked for. Two worlds that were created alike and have had
+     * the same calls made on them have the same digest.
+     */
+    public long getStateDigest() {
+        if (this.pheromoneDigestStale) {
+            hashPheromones();
+            this.pheromoneDigestStale = false;
+        }
+        return Hasher.mix(Hasher.mix(this.pheromoneDigest, this.eventDigest), this.foodCount);
+    }
+
+    private void hashPheromones() {
+        long h = 0;
+        for (final float[][] grid : List.of(this.foodPheromone, this.foragingPheromone)) {
+            for (final float[] column : grid) {
+                for (final float level : column) {
+                    h = Hasher.mix(h, Float.floatToRawIntBits(level));
+                }
+            }
+        }
+        this.pheromoneDigest = h;
+    }
+
+    private void rebuildPyramids() {
+        this.foodPyramid.rebuild(this.foodPheromone);
+        this.foragingPyramid.rebuild(this.foragingPheromone);
     }
 
     private void dropFoodSourcePheromones() {
@@ -229,6 +609,9 @@ public class MyAntWorld implements AntWorld {
         selfContainedDispersePheromone(this.foodPheromone);
 
         dropFoodSourcePheromones();
+        rebuildPyramids();
+        updateGradients();
+        this.pheromoneDigestStale = true;
     }
 
     /**
@@ -244,9 +627,10 @@ public class MyAntWorld implements AntWorld {
                 final Position p = new Position((float) x, (float) y);
                 if (!isObstacle(p)) {
                     npl = sumAdjacentCells(x, y, pheromone);
-                    npl = ((1.0F - PHEROMONE_NEIGHBOUR_KEEP) * npl) / NUMBER_OF_NEIGHBOURS + (PHEROMONE_NEIGHBOUR_KEEP * (pheromone[x][y]));
+                    npl = ((1.0F - this.pheromoneNeighbourKeep) * npl) / NUMBER_OF_NEIGHBOURS + (this.pheromoneNeighbourKeep * (pheromone[x][y]));
                 }
-                tmpP[x][y] = npl * PHEROMONE_DROPOFF;
+                tmpP[x][y] = npl * this.pheromoneDropoff;
+                markDispersed(x, y, pheromone[x][y], tmpP[x][y]);
             }
         }
         if (pheromone == this.foodPheromone) {
@@ -276,8 +660,196 @@ public class MyAntWorld implements AntWorld {
     }
 
     @Override
-    public void setObstacle(final Position p, final boolean add) { }
+    public void setObstacle(final Position p, final boolean add) {
+        if (!p.isInBounds(this.width, this.height)) {
+            return;
+        }
+        final int x = p.floorX();
+        final int y = p.floorY();
+        if (this.obstacles[x][y] != add) {
+            this.obstacles[x][y] = add;
+            this.obstacleVersion++;
+            this.obstacleTileVersions[tile(x, y)] = this.obstacleVersion;
+            recordEvent(5, p, add ? 1 : 0);
+            this.homeDistance.setBlocked(x, y, add);
+            this.foodDistance.setBlocked(x, y, add);
+            // Right away, so that the distance getters never change anything
+            this.homeDistance.update();
+            this.foodDistance.update();
+        }
+    }
 
     @Override
     public void hitObstacle(final Position p, final float strength) { }
+
+    /**
+     * @return A new snapshot of this world's size, to be filled by {@code copyTo}.
+     */
+    public WorldSnapshot createSnapshot() {
+        return new WorldSnapshot(this.width, this.height, PYRAMID_LEVELS, this.home, this.nests);
+    }
+
+    /**
+     * Brings {@code snapshot} up to date with this world. Only grids that have changed since the snapshot was
+     * last written to are copied, and of the pheromone grids only the tiles that have changed visibly, so levels
+     * too low to show may lag behind.
+     */
+    public void copyTo(final WorldSnapshot snapshot) {
+        this.pheromoneStamp++;
+        for (int t = 0; t < this.changedTiles.length; t++) {
+            if (this.changedTiles[t]) {
+                this.tileStamps[t] = this.pheromoneStamp;
+                this.changedTiles[t] = false;
+            }
+        }
+        for (int t = 0; t < this.tileStamps.length; t++) {
+            if (this.tileStamps[t] > snapshot.pheromoneStamp) {
+                final int x0 = t / this.tileRows * TILE_SIZE;
+                final int y0 = t % this.tileRows * TILE_SIZE;
+                copyTile(this.foodPheromone, snapshot.foodPheromone, x0, y0);
+                copyTile(this.foragingPheromone, snapshot.foragingPheromone, x0, y0);
+                snapshot.tileChanged(t);
+            }
+        }
+        System.arraycopy(this.tileStamps, 0, snapshot.pheromoneTileStamps, 0, this.tileStamps.length);
+        snapshot.pheromoneStamp = this.pheromoneStamp;
+        if (snapshot.foodVersion != this.foodVersion) {
+            for (int x = 0; x < this.width; x++) {
+                for (int y = 0; y < this.height; y++) {
+                    snapshot.food[x][y] = -1 != this.containsFood[x][y];
+                }
+            }
+            snapshot.foodPatches.clear();
+            for (final FoodSource source : this.foodSources) {
+                if (source.containsFood()) {
+                    snapshot.foodPatches.add(new WorldSnapshot.FoodPatch(source.getPosition(), source.getRadius()));
+                }
+            }
+            snapshot.foodVersion = this.foodVersion;
+        }
+        if (snapshot.obstacleVersion != this.obstacleVersion) {
+            for (int t = 0; t < this.obstacleTileVersions.length; t++) {
+                if (this.obstacleTileVersions[t] > snapshot.obstacleVersion) {
+                    final int x0 = t / this.tileRows * TILE_SIZE;
+                    final int y0 = t % this.tileRows * TILE_SIZE;
+                    final int length = Math.min(this.height - y0, TILE_SIZE);
+                    for (int x = x0; x < Math.min(this.width, x0 + TILE_SIZE); x++) {
+                        System.arraycopy(this.obstacles[x], y0, snapshot.obstacles[x], y0, length);
+                    }
+                }
+            }
+            System.arraycopy(this.obstacleTileVersions, 0, snapshot.obstacleTileVersions, 0,
+                    this.obstacleTileVersions.length);
+            snapshot.obstacleVersion = this.obstacleVersion;
+        }
+        if (snapshot.deadAntVersion != this.deadAntVersion) {
+            for (int x = 0; x < this.width; x++) {
+                System.arraycopy(this.deadAnts[x], 0, snapshot.deadAnts[x], 0, this.height);
+            }
+            snapshot.deadAntVersion = this.deadAntVersion;
+        }
+        snapshot.foodCount = this.foodCount;
+    }
+
+    /**
+     * @return The number of bytes {@code writeState} will write.
+     */
+    int getStateSize() {
+        final int cells = this.width * this.height;
+        return 3 * Long.BYTES + 1 + 3 * Long.BYTES + Integer.BYTES + this.foodSources.size() * 4 * Integer.BYTES
+                + 2 * cells * Float.BYTES + cells + cells * Integer.BYTES;
+    }
+
+    /**
+     * Writes the state that can't be derived: pheromones, food sources, obstacles, carcasses, delivered food, the
+     * food placement generator and the parts of the state digest. Everything else is rebuilt by {@code readState},
+     * which is exact as long as the state is written right after a dispersal, before any ant has dropped pheromones
+     * again.
+     */
+    void writeState(final ByteBuffer b) {
+        b.putLong(this.foodCount);
+        b.putLong(this.eventDigest);
+        b.putLong(this.pheromoneDigest);
+        b.put((byte) (this.pheromoneDigestStale ? 1 : 0));
+        for (final long word : this.rand.getState()) {
+            b.putLong(word);
+        }
+        b.putInt(this.foodSources.size());
+        for (final FoodSource source : this.foodSources) {
+            b.putFloat(source.getPosition().getX());
+            b.putFloat(source.getPosition().getY());
+            b.putInt(source.getRadius());
+            b.putInt(source.getAmount());
+        }
+        for (final float[][] grid : List.of(this.foodPheromone, this.foragingPheromone)) {
+            for (final float[] column : grid) {
+                b.asFloatBuffer().put(column);
+                b.position(b.position() + column.length * Float.BYTES);
+            }
+        }
+        for (final boolean[] column : this.obstacles) {
+            for (final boolean obstacle : column) {
+                b.put((byte) (obstacle ? 1 : 0));
+            }
+        }
+        for (final int[] column : this.deadAnts) {
+            b.asIntBuffer().put(column);
+            b.position(b.position() + column.length * Integer.BYTES);
+        }
+    }
+
+    /**
+     * Replaces this world's state with one written by {@code writeState} for a world of the same size.
+     */
+    void readState(final ByteBuffer b) {
+        this.foodCount = b.getLong();
+        this.eventDigest = b.getLong();
+        this.pheromoneDigest = b.getLong();
+        this.pheromoneDigestStale = 0 != b.get();
+        this.rand = Konadare192RNG.fromState(b.getLong(), b.getLong(), b.getLong());
+        final int sources = b.getInt();
+        this.foodSources.clear();
+        for (int i = 0; i < sources; i++) {
+            final Position p = new Position(b.getFloat(), b.getFloat());
+            final int radius = b.getInt();
+            this.foodSources.add(new FoodSource(b.getInt(), p, radius));
+        }
+        for (final float[][] grid : List.of(this.foodPheromone, this.foragingPheromone)) {
+            for (final float[] column : grid) {
+                b.asFloatBuffer().get(column);
+                b.position(b.position() + column.length * Float.BYTES);
+            }
+        }
+        // Not through setObstacle, which would fold the changes into the event digest
+        this.obstacleVersion++;
+        for (int x = 0; x < this.width; x++) {
+            for (int y = 0; y < this.height; y++) {
+                final boolean obstacle = 0 != b.get();
+                if (this.obstacles[x][y] != obstacle) {
+                    this.obstacles[x][y] = obstacle;
+                    this.obstacleTileVersions[tile(x, y)] = this.obstacleVersion;
+                    this.homeDistance.setBlocked(x, y, obstacle);
+                    this.foodDistance.setBlocked(x, y, obstacle);
+                }
+            }
+        }
+        for (final int[] column : this.deadAnts) {
+            b.asIntBuffer().get(column);
+            b.position(b.position() + column.length * Integer.BYTES);
+        }
+        this.deadAntVersion++;
+        Arrays.fill(this.changedTiles, true);
+        updateContainsFoodMatrix();
+        this.homeDistance.update();
+        rebuildPyramids();
+        updateGradients();
+    }
+
+    private void copyTile(final float[][] src, final float[][] dst, final int x0, final int y0) {
+        final int x1 = Math.min(this.width, x0 + TILE_SIZE);
+        final int length = Math.min(this.height - y0, TILE_SIZE);
+        for (int x = x0; x < x1; x++) {
+            System.arraycopy(src[x], y0, dst[x], y0, length);
+        }
+    }
 }
\ No newline at end of file
@@ -5,13 +5,34 @@ import java.util.function.Function;
 public class MyDispersalPolicy implements DispersalPolicy {
 
     // Constants
-    private static final float PHEROMONE_DROPOFF = 0.95F;
-    private static final float PHEROMONE_NEIGHBOUR_KEEP = 0.5f;
+    public static final float DEFAULT_PHEROMONE_DROPOFF = 0.95F;
+    public static final float DEFAULT_PHEROMONE_NEIGHBOUR_KEEP = 0.5f;
     private static final float NUMBER_OF_NEIGHBOURS = 8.0f;
     private static final int[][] ADJACENT_CELL_DELTAS = {{-1,  1}, { 0,  1}, {1,  1},
                                                          {-1,  0}, /*CELL*/  {1,  0},
                                                          {-1, -1}, { 0, -1}, {1, -1}}; // Pls don't auto format :(
 
+    // Share of the pheromone kept each dispersal, and share of it kept in the cell rather than spread out
+    private final float pheromoneDropoff;
+    private final float pheromoneNeighbourKeep;
+
+    public MyDispersalPolicy() {
+        this(DEFAULT_PHEROMONE_DROPOFF, DEFAULT_PHEROMONE_NEIGHBOUR_KEEP);
+    }
+
+    public MyDispersalPolicy(final float pheromoneDropoff, final float pheromoneNeighbourKeep) {
+        this.pheromoneDropoff = pheromoneDropoff;
+        this.pheromoneNeighbourKeep = pheromoneNeighbourKeep;
+    }
+
+    public float getPheromoneDropoff() {
+        return this.pheromoneDropoff;
+    }
+
+    public float getPheromoneNeighbourKeep() {
+        return this.pheromoneNeighbourKeep;
+    }
+
     @Override
     public float[] getDispersedValue(final AntWorld w, final Position p) {
         // Floored coordinates of position, for indexing
@@ -24,13 +45,13 @@ public class MyDispersalPolicy implements DispersalPolicy {
         if (!w.isObstacle(p)) {
             // New levels for food pheromone
             nplFood = sumAdjacentCells(x, y, w, w::getFoodStrength);
-            nplFood = ((1.0F - PHEROMONE_NEIGHBOUR_KEEP) * nplFood) / NUMBER_OF_NEIGHBOURS + (PHEROMONE_NEIGHBOUR_KEEP * (w.getFoodStrength(p)));
-            nplFood = nplFood * PHEROMONE_DROPOFF;
+            nplFood = ((1.0F - this.pheromoneNeighbourKeep) * nplFood) / NUMBER_OF_NEIGHBOURS + (this.pheromoneNeighbourKeep * (w.getFoodStrength(p)));
+            nplFood = nplFood * this.pheromoneDropoff;
 
             // New levels for forage pheromone
             nplForage = sumAdjacentCells(x, y, w, w::getForagingStrength);
-            nplForage = ((1.0F - PHEROMONE_NEIGHBOUR_KEEP) * nplForage) / NUMBER_OF_NEIGHBOURS + (PHEROMONE_NEIGHBOUR_KEEP * (w.getForagingStrength(p)));
-            nplForage = nplForage * PHEROMONE_DROPOFF;
+            nplForage = ((1.0F - this.pheromoneNeighbourKeep) * nplForage) / NUMBER_OF_NEIGHBOURS + (this.pheromoneNeighbourKeep * (w.getForagingStrength(p)));
+            nplForage = nplForage * this.pheromoneDropoff;
 
         }
 
@@ -0,0 +1,152 @@
+package org.evensen.ants;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a headless simulation for every point of a parameter grid, many at a time, and writes the results as CSV.
+ * <p>
+ * Usage: {@code java -cp <classes> org.evensen.ants.ParameterSweep [--key=v1,v2,...] [--replicates=n]
+ * [--threads=n] [--out=file.csv]}, where the keys are those of {@code SimulationConfig}. Every key given more than
+ * one comma separated value is an axis of the grid. Each grid point is run {@code replicates} times.
+ * </p>
+ * Seeds are derived on the calling thread, from the sweep seed and the replicate number only: replicate {@code r}
+ * gets the first draw of substream {@code r} of a generator seeded with the sweep seed. So every grid point sees the
+ * same worlds and differences between points are down to the parameters. Simulations share no mutable state, so the
+ * results do not depend on the number of threads.
+ */
+public enum ParameterSweep {
+    ;
+
+    private record Run(Map<String, String> parameters, int replicate, SimulationConfig config) {
+    }
+
+    private record Result(Run run, long foodDelivered, double seconds, long antSteps) {
+    }
+
+    public static void main(final String[] args) throws IOException, InterruptedException, ExecutionException {
+        final Map<String, List<String>> grid = new LinkedHashMap<>();
+        int replicates = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String out = "sweep.csv";
+        for (final String arg : args) {
+            final int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || 0 > eq) {
+                throw new IllegalArgumentException("Expected --key=value, got " + arg);
+            }
+            final String key = arg.substring(2, eq);
+            final String value = arg.substring(eq + 1);
+            switch (key) {
+                case "replicates" -> replicates = Integer.parseInt(value);
+                case "threads" -> threads = Integer.parseInt(value);
+                case "out" -> out = value;
+                default -> grid.put(key, Arrays.asList(value.split(",")));
+            }
+        }
+
+        final List<Run> runs = expand(grid, replicates, SeedGenerator.nextSeed());
+        System.out.println("Running " + runs.size() + " simulations on " + threads + " threads");
+        final List<Result> results = runAll(runs, threads);
+        writeCsv(Path.of(out), new ArrayList<>(grid.keySet()), results);
+        System.out.println("Wrote " + out);
+    }
+
+    /**
+     * Builds one run per grid point and replicate, validating every configuration up front.
+     */
+    private static List<Run> expand(final Map<String, List<String>> grid, final int replicates,
+                                    final long sweepSeed) {
+        List<Map<String, String>> points = List.of(Map.of());
+        for (final Map.Entry<String, List<String>> axis : grid.entrySet()) {
+            final List<Map<String, String>> expanded = new ArrayList<>();
+            for (final Map<String, String> point : points) {
+                for (final String value : axis.getValue()) {
+                    final Map<String, String> p = new LinkedHashMap<>(point);
+                    p.put(axis.getKey(), value.trim());
+                    expanded.add(p);
+                }
+            }
+            points = expanded;
+        }
+
+        final Konadare192RNG seeds = new Konadare192RNG(sweepSeed);
+        final List<Run> runs = new ArrayList<>();
+        for (final Map<String, String> point : points) {
+            for (int r = 0; r < replicates; r++) {
+                final Properties properties = new Properties();
+                properties.putAll(point);
+                if (!point.containsKey("seed")) {
+                    properties.setProperty("seed", Long.toString(seeds.substream(r).nextLong()));
+                }
+                runs.add(new Run(point, r, SimulationConfig.fromProperties(properties)));
+            }
+        }
+        return runs;
+    }
+
+    private static List<Result> runAll(final List<Run> runs, final int threads)
+            throws InterruptedException, ExecutionException {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Result>> futures = new ArrayList<>(runs.size());
+            for (final Run run : runs) {
+                futures.add(executor.submit(() -> simulate(run)));
+            }
+            final List<Result> results = new ArrayList<>(runs.size());
+            for (final Future<Result> f : futures) {
+                final Result result = f.get();
+                System.out.println("Done: " + result.run().config());
+                results.add(result);
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Result simulate(final Run run) {
+        final Simulation simulation = new Simulation(run.config());
+        final long startTime = System.nanoTime();
+        for (long i = 0; i < run.config().getEpochs(); i++) {
+            simulation.step();
+        }
+        final double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+        return new Result(run, simulation.getWorld().getFoodCount(), seconds, simulation.getAntSteps());
+    }
+
+    private static void writeCsv(final Path path, final List<String> keys, final List<Result> results)
+            throws IOException {
+        try (PrintWriter w = new PrintWriter(Files.newBufferedWriter(path))) {
+            final List<String> header = new ArrayList<>(keys);
+            header.addAll(List.of("replicate", "seed", "epochs_run", "food_delivered", "epochs_per_second",
+                    "ant_steps_per_second"));
+            w.println(String.join(",", header));
+            for (final Result result : results) {
+                final Run run = result.run();
+                final List<String> row = new ArrayList<>();
+                for (final String key : keys) {
+                    row.add(run.parameters().get(key));
+                }
+                row.add(Integer.toString(run.replicate()));
+                row.add(Long.toString(run.config().getSeed()));
+                row.add(Long.toString(run.config().getEpochs()));
+                row.add(Long.toString(result.foodDelivered()));
+                row.add(Double.toString(run.config().getEpochs() / result.seconds()));
+                row.add(Double.toString(result.antSteps() / result.seconds()));
+                w.println(String.join(",", row));
+            }
+        }
+    }
+}
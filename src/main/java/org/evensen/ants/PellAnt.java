@@ -1,5 +1,6 @@
 package org.evensen.ants;
 
+import java.nio.ByteBuffer;
 import java.util.BitSet;
 import java.util.Objects;
 import java.util.SortedSet;
@@ -7,7 +8,7 @@ import java.util.TreeSet;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.random.RandomGenerator.SplittableGenerator;
+import java.util.random.RandomGenerator;
 
 import static org.evensen.ants.GraphicsMath.TAU;
 
@@ -25,16 +26,74 @@ public class PellAnt implements Ant {
     private static final float TURN_RATE = 0.9f;
     private static final float SCENT_DEVIATION = 0.01f;
     private static final float[] RADII_WEIGHTS;
+    private static final int[] RADII_LEVELS;
+    private static final int SCAN_RAYS;
     private static final int DEFAULT_HIT_POINTS = 10;
     private static final float PHEROMONE_STRENGTH = 0.001f;
+    private static final float MIN_GRADIENT_MAGNITUDE = 1.0E-6f; // Per cell; trails are around 1e-4 strong.
+    private static final float CARCASS_WEIGHT = 0.01f;
+    private static final float CROWDING_RADIUS = 2.0f;
+    private static final int CROWDING_LIMIT = 6;
+    private static final float CROWDING_TURN = 0.1f;
+    static final int STATE_BYTES = 4 + 1 + 6 * 4 + 1 + 4 + 8; // Size of a writeState record.
 
     static {
         RADII_WEIGHTS = new float[(int) ((SCAN_RADIUS - MIN_SCAN_RADIUS) / RADIUS_INCREMENT + 1)];
+        RADII_LEVELS = new int[RADII_WEIGHTS.length];
         int i = 0;
         for (float radius = MIN_SCAN_RADIUS; SCAN_RADIUS > radius; radius += RADIUS_INCREMENT) {
             RADII_WEIGHTS[i] = radius * radius;
+            // Far out, neighbouring rays are several cells apart; read pre-averaged blocks no wider than that gap.
+            final float raySpacing = radius * MOVE_RATE * SCAN_INCREMENT;
+            RADII_LEVELS[i] = 1.0f < raySpacing ? 31 - Integer.numberOfLeadingZeros((int) raySpacing) : 0;
             i++;
         }
+        // Counted with the scan's own float loop, so rounding can't make them disagree.
+        int rays = 0;
+        for (float angle = -SCAN_ANGLE / 2.0f; SCAN_ANGLE / 2.0 >= angle; angle += SCAN_INCREMENT) {
+            rays++;
+        }
+        SCAN_RAYS = rays;
+    }
+
+    /**
+     * How an ant finds its way along pheromone trails.
+     */
+    public enum Steering {
+        /**
+         * Sweeps rays over the whole scan angle every step.
+         */
+        SCAN,
+        /**
+         * Follows the world's precomputed pheromone gradient while it is strong enough, points within the scan
+         * angle and the way ahead is clear, otherwise falls back to {@code SCAN}.
+         */
+        GRADIENT
+    }
+
+    /**
+     * The per-colony tunable parts of an ant's behaviour.
+     *
+     * @param moveRate          Base distance moved per epoch. Each ant varies it by up to 10%.
+     * @param pheromoneStrength Pheromone dropped per drop when the ant's supply is full.
+     * @param pheromoneDropRate Share of the supply left after each drop.
+     */
+    public record Tuning(float moveRate, float pheromoneStrength, float pheromoneDropRate) {
+        public static final Tuning DEFAULT = new Tuning(MOVE_RATE, PHEROMONE_STRENGTH, PHEROMONE_DROP_RATE);
+    }
+
+    /**
+     * What the generators of a colony's ants share. Draw {@code i} of an ant's move {@code n} is
+     * {@code CounterRNG.at(seed, id, n, i)}, so all an ant keeps of its generator is its move count.
+     *
+     * @param seed The colony-wide seed.
+     */
+    public record Brood(long seed) {
+    }
+
+    @FunctionalInterface
+    private interface ScentFunction {
+        float strength(Position p, int level);
     }
 
     private static final class BehaviourState {
@@ -63,16 +122,19 @@ public class PellAnt implements Ant {
 
     private final BehaviourState getCarryingState() {
         return new BehaviourState(
-                (x -> scanForTypeAngle(x, x::isHome)),
-                (x -> scanForTypeAngle(x, x::containsFood)),
+                (x -> scanForHomeAngle(x)),
+                (x -> scanForFoodAngle(x)),
                 (x -> x.dropFoodPheromone(this.position,
-                        this.pheromonesLeft * PHEROMONE_STRENGTH)),
-                ((x, p) -> scanForScentAngle(x, p ?
-                        x::getForagingStrength : x::getFoodStrength, null, 1).direction),
+                        this.pheromonesLeft * this.pheromoneStrength)),
+                ((x, p) -> {
+                    final float gradientAngle = followGradient(x, p ? 0.0f : 1.0f, p ? 1.0f : 0.0f);
+                    return 0 <= gradientAngle ? gradientAngle : scanForScentAngle(x, p ?
+                            x::getForagingStrength : x::getFoodStrength, null, 1).direction;
+                }),
                 (x -> {
                     if (this.carriesFood && x.isHome(this.position)) {
                         x.dropFood(this.position);
-                        this.direction += PI + this.rng.nextFloat() * 0.1 - 0.05;
+                        this.direction += PI + nextFloat() * 0.1 - 0.05;
                         this.carriesFood = false;
                         this.pheromonesLeft = 1.0f;
                         this.currentState = this.foragingState;
@@ -82,16 +144,19 @@ public class PellAnt implements Ant {
 
     private final BehaviourState getForagingState() {
         return new BehaviourState(
-                (x -> scanForTypeAngle(x, x::containsFood)),
-                (x -> scanForTypeAngle(x, x::isHome)),
+                (x -> scanForFoodAngle(x)),
+                (x -> scanForHomeAngle(x)),
                 (x -> x.dropForagingPheromone(this.position,
-                        this.pheromonesLeft * PHEROMONE_STRENGTH)),
-                ((x, p) -> scanForScentAngle(x, x::getFoodStrength, x::getForagingStrength,
-                        NO_FOOD_WEIGHT).direction),
+                        this.pheromonesLeft * this.pheromoneStrength)),
+                ((x, p) -> {
+                    final float gradientAngle = followGradient(x, 1.0f, -1.0f);
+                    return 0 <= gradientAngle ? gradientAngle : scanForScentAngle(x, x::getFoodStrength,
+                            x::getForagingStrength, NO_FOOD_WEIGHT).direction;
+                }),
                 (x -> {
                     if (x.containsFood(this.position)) {
                         x.pickUpFood(this.position);
-                        this.direction += PI + this.rng.nextFloat() * 0.1 - 0.05;
+                        this.direction += PI + nextFloat() * 0.1 - 0.05;
                         this.carriesFood = true;
                         this.pheromonesLeft = 1.0f;
                         this.currentState = this.carryingState;
@@ -104,9 +169,17 @@ public class PellAnt implements Ant {
     private BehaviourState currentState;
 
     private final float pheromoneRate;
-    private final SplittableGenerator rng;
+    private final Steering steering;
+    private final int id;
+    private final Brood brood;
+    private final RandomGenerator draws;
+    private long step;
+    private int draw;
+    private final float[] scanJitter;
     private final float moveRate;
     private final float carryingMoveRate;
+    private final float pheromoneStrength;
+    private final float pheromoneDropRate;
     private final Action currentGoal;
     private Position position;
     private boolean carriesFood;
@@ -115,19 +188,70 @@ public class PellAnt implements Ant {
 
     private int hitPoints;
 
+    // Accumulators for crowding avoidance, filled by a visitor created once per ant.
+    private final AntNeighbourhood.Visitor crowdingVisitor;
+    private float crowdX;
+    private float crowdY;
+
     public PellAnt(final Position startingPosition, final float pheromoneRate) {
-        this.position = startingPosition;
-        this.rng = new Konadare192RNG(startingPosition.hashCode() * 9999L + Float.hashCode(pheromoneRate));
-        this.pheromoneRate = pheromoneRate + this.rng.nextFloat() * pheromoneRate * 0.1f;
-        this.direction = this.rng.nextFloat() * TAU;
-        this.moveRate = MOVE_RATE + this.rng.nextFloat() * MOVE_RATE * 0.1f;
+        this(startingPosition, pheromoneRate, Steering.SCAN);
+    }
+
+    public PellAnt(final Position startingPosition, final float pheromoneRate, final Steering steering) {
+        this(startingPosition, pheromoneRate, steering, Tuning.DEFAULT, -1);
+    }
+
+    /**
+     * @param id A number identifying the ant within its colony.
+     */
+    public PellAnt(final Position startingPosition, final float pheromoneRate, final Steering steering,
+                   final Tuning tuning, final int id) {
+        this(startingPosition, pheromoneRate, steering, tuning, id,
+                new Brood(startingPosition.hashCode() * 9999L + Float.hashCode(pheromoneRate)));
+    }
+
+    /**
+     * Draws the per-ant variations from move 0 of its generator, in argument order. Its moves are numbered from 1.
+     *
+     * @param brood Shared by the ants of a colony, which are told apart by their ids.
+     */
+    public PellAnt(final Position startingPosition, final float pheromoneRate, final Steering steering,
+                   final Tuning tuning, final int id, final Brood brood) {
+        this(startingPosition,
+                pheromoneRate + CounterRNG.floatAt(brood.seed(), id, 0, 0) * pheromoneRate * 0.1f,
+                CounterRNG.floatAt(brood.seed(), id, 0, 1) * TAU,
+                tuning.moveRate() + CounterRNG.floatAt(brood.seed(), id, 0, 2) * tuning.moveRate() * 0.1f,
+                steering, tuning, id, brood, 0);
+    }
+
+    private PellAnt(final Position position, final float pheromoneRate, final float direction,
+                    final float moveRate, final Steering steering, final Tuning tuning, final int id,
+                    final Brood brood, final long step) {
+        this.position = position;
+        this.steering = steering;
+        this.id = id;
+        this.brood = brood;
+        this.step = step;
+        this.draws = this::nextLong;
+        this.scanJitter = new float[SCAN_RAYS];
+        this.pheromoneRate = pheromoneRate;
+        this.direction = direction;
+        this.moveRate = moveRate;
         this.carryingMoveRate = this.moveRate * CARRYING_MOVE_SCALE;
+        this.pheromoneStrength = tuning.pheromoneStrength();
+        this.pheromoneDropRate = tuning.pheromoneDropRate();
         this.currentGoal = Action.FORAGING;
         this.hitPoints = DEFAULT_HIT_POINTS;
         this.carriesFood = false;
         this.carryingState = getCarryingState();
         this.foragingState = getForagingState();
         this.currentState = this.foragingState;
+        this.crowdingVisitor = (ant, dx, dy, distanceSquared) -> {
+            if (0.0f < distanceSquared) {
+                this.crowdX += dx / distanceSquared;
+                this.crowdY += dy / distanceSquared;
+            }
+        };
     }
 
     @Override
@@ -148,15 +272,26 @@ public class PellAnt implements Ant {
         return Objects.hash(this.pheromoneRate, this.position, this.direction);
     }
 
-    private Scent scanForScentAngle(final AntWorld w, final Function<Position, Float> primaryScentFunction,
-                                    Function<Position, Float> secondaryScentFunction,
+    private Scent scanForScentAngle(final AntWorld w, final ScentFunction primaryScentFunction,
+                                    ScentFunction secondaryScentFunction,
                                     final float noFoodWeight) {
+        // One bulk draw for the jitter of every ray, made even when the sweep is skipped so that later draws don't
+        // depend on it.
+        for (int i = 0; i < SCAN_RAYS; i++) {
+            this.scanJitter[i] = (float) nextGaussian();
+        }
+        if (!w.hasPheromonesNear(this.position, this.moveRate * SCAN_RADIUS)) {
+            // Without scent no ray scores above zero: obstacles and carcasses only subtract, and the jitter is a
+            // positive factor. Only rays above zero are ever picked, so the sweep would keep the direction too.
+            return new Scent(this.direction, 0);
+        }
         if (null == secondaryScentFunction) {
-            secondaryScentFunction = p -> w.isObstacle(p) ? 0.1f : 0f;
+            secondaryScentFunction = (p, level) -> w.isObstacle(p) ? 0.1f : 0f;
         }
         final float strongestScent = 0;
         final float strongestAngle = this.direction;
         final SortedSet<Scent> bestScents = new TreeSet<>();
+        int ray = 0;
 
         for (float i = -SCAN_ANGLE / 2.0f; SCAN_ANGLE / 2.0 >= i; i += SCAN_INCREMENT) {
             final float theta = this.direction + i;
@@ -171,12 +306,14 @@ public class PellAnt implements Ant {
                     scentAcc -= RADII_WEIGHTS[radiusIndex];
                     break;
                 }
-                scentAcc += primaryScentFunction.apply(offset) * RADII_WEIGHTS[radiusIndex];
-                negativeScentAcc += secondaryScentFunction.apply(offset) * RADII_WEIGHTS[radiusIndex];
+                final int level = RADII_LEVELS[radiusIndex];
+                scentAcc += primaryScentFunction.strength(offset, level) * RADII_WEIGHTS[radiusIndex];
+                negativeScentAcc += (secondaryScentFunction.strength(offset, level)
+                        + w.getDeadAntCount(offset) * CARCASS_WEIGHT) * RADII_WEIGHTS[radiusIndex];
                 radiusIndex++;
             }
             scentAcc -= negativeScentAcc;
-            scentAcc *= ((float) this.rng.nextGaussian() * SCENT_DEVIATION + 2.0f);
+            scentAcc *= this.scanJitter[ray++] * SCENT_DEVIATION + 2.0f;
             if (scentAcc > 0) {
                 bestScents.add(new Scent(theta, scentAcc));
             }
@@ -191,6 +328,72 @@ public class PellAnt implements Ant {
         return new Scent(this.direction, 0);
     }
 
+    /**
+     * Reads the world's pheromone gradient instead of scanning for scent.
+     *
+     * @return The direction to go, or a negative value if a full scan is needed.
+     */
+    private float followGradient(final AntWorld w, final float foodWeight, final float foragingWeight) {
+        if (Steering.GRADIENT != this.steering) {
+            return -1;
+        }
+        final float angle = w.getPheromoneGradientAngle(this.position, foodWeight, foragingWeight,
+                MIN_GRADIENT_MAGNITUDE);
+        if (0 > angle) {
+            return -1;
+        }
+        final float theta = withinScanAngle(angle);
+        if (0 > theta || !isPathClear(w, theta, 2.0f, this.moveRate * RADIUS_INCREMENT)) {
+            return -1;
+        }
+        return theta;
+    }
+
+    /**
+     * Uses the world's home distance field, if there is one, instead of ray marching for home.
+     *
+     * @return The direction towards home, or a negative value if home isn't sensed.
+     */
+    private float scanForHomeAngle(final AntWorld w) {
+        final float distance = w.getHomeDistance(this.position);
+        return 0 > distance ? scanForTypeAngle(w, w::isHome) : sense(distance, w.getHomeDirection(this.position));
+    }
+
+    /**
+     * Uses the world's food distance field, if there is one, instead of ray marching for food.
+     *
+     * @return The direction towards food, or a negative value if food isn't sensed.
+     */
+    private float scanForFoodAngle(final AntWorld w) {
+        final float distance = w.getFoodDistance(this.position);
+        return 0 > distance ? scanForTypeAngle(w, w::containsFood) : sense(distance, w.getFoodDirection(this.position));
+    }
+
+    /**
+     * Like the scans, targets are only sensed within the scan radius and angle.
+     */
+    private float sense(final float distance, final float direction) {
+        if (this.moveRate * SCAN_RADIUS < distance) {
+            return -1;
+        }
+        return withinScanAngle(direction);
+    }
+
+    /**
+     * @return {@code angle} in {@code [0, TAU)} if it is within the scan angle of the current direction,
+     * a negative value otherwise.
+     */
+    private float withinScanAngle(final float angle) {
+        if (0 > angle) {
+            return -1;
+        }
+        final float delta = signedAngle(this.direction, angle);
+        if (SCAN_ANGLE / 2.0f < Math.abs(delta)) {
+            return -1;
+        }
+        return ((this.direction + delta) % TAU + TAU) % TAU;
+    }
+
     private boolean isPathClear(final AntWorld w, final float direction, final float baseRadius,
                                 final float maxRadius) {
         final float xOff = (float) Math.cos(direction);
@@ -255,13 +458,34 @@ public class PellAnt implements Ant {
                     this.direction = TAU - this.direction;
                 }
             } else {
-                this.direction = this.direction + (float) (this.rng.nextGaussian() * 0.5);
+                this.direction = this.direction + (float) (nextGaussian() * 0.5);
             }
             w.hitObstacle(newPosition, 1.0f);
         }
     }
 
+    // The next draw of the current move
+    private long nextLong() {
+        return CounterRNG.at(this.brood.seed(), this.id, this.step, this.draw++);
+    }
+
+    private float nextFloat() {
+        return CounterRNG.floatAt(this.brood.seed(), this.id, this.step, this.draw++);
+    }
+
+    private double nextGaussian() {
+        return Ziggurat.sample(this.draws);
+    }
+
     public void move(final AntWorld w) {
+        move(w, null);
+    }
+
+    @Override
+    public void move(final AntWorld w, final AntNeighbourhood neighbours) {
+        // Every move draws from a step of its own, so the draws depend on the move count alone.
+        this.step++;
+        this.draw = 0;
         if (isDead()) {
             return;
         }
@@ -270,9 +494,9 @@ public class PellAnt implements Ant {
 
         float bestDirection = this.currentState.goalAngleScan.apply(w);
         if (hasPheromones) {
-            if (this.rng.nextFloat() < this.pheromoneRate) {
+            if (nextFloat() < this.pheromoneRate) {
                 this.currentState.dropPheromone.accept(w);
-                this.pheromonesLeft *= PHEROMONE_DROP_RATE;
+                this.pheromonesLeft *= this.pheromoneDropRate;
             }
         } else {
             if (bestDirection < 0) {
@@ -283,7 +507,11 @@ public class PellAnt implements Ant {
             bestDirection = this.currentState.getPheromoneDirection.apply(w, hasPheromones);
         }
         if (bestDirection < 0) {
-            bestDirection = (float) (this.direction + this.rng.nextGaussian() * 0.01);
+            bestDirection = (float) (this.direction + nextGaussian() * 0.01);
+        }
+
+        if (null != neighbours) {
+            bestDirection = avoidCrowding(neighbours, bestDirection);
         }
 
         final float newDirection = bestDirection;
@@ -293,10 +521,83 @@ public class PellAnt implements Ant {
     }
 
 
+    /**
+     * Turns slightly away from the ants around, if there are too many of them.
+     */
+    private float avoidCrowding(final AntNeighbourhood neighbours, final float direction) {
+        this.crowdX = 0.0f;
+        this.crowdY = 0.0f;
+        // The ant itself is among its neighbours.
+        if (CROWDING_LIMIT >= neighbours.forEachNeighbour(this.position, CROWDING_RADIUS, this.crowdingVisitor) - 1) {
+            return direction;
+        }
+        final float away = (float) Math.atan2(-this.crowdY, -this.crowdX);
+        return direction + GraphicsMath.bound(-CROWDING_TURN, CROWDING_TURN, signedAngle(direction, away));
+    }
+
+    /**
+     * @return The turn from {@code from} to {@code to}, in {@code [-PI, PI]}.
+     */
+    private static float signedAngle(final float from, final float to) {
+        float delta = (to - from) % TAU;
+        if (PI < delta) {
+            delta -= TAU;
+        } else if (-PI > delta) {
+            delta += TAU;
+        }
+        return delta;
+    }
+
+    @Override
+    public int getId() {
+        return this.id;
+    }
+
     public float getDirection() {
         return this.direction;
     }
 
+    /**
+     * Writes everything needed to recreate this ant with {@code readState}, {@code STATE_BYTES} in all.
+     */
+    void writeState(final ByteBuffer b) {
+        b.putInt(this.id);
+        b.put((byte) this.steering.ordinal());
+        b.putFloat(this.position.getX());
+        b.putFloat(this.position.getY());
+        b.putFloat(this.direction);
+        b.putFloat(this.pheromoneRate);
+        b.putFloat(this.moveRate);
+        b.putFloat(this.pheromonesLeft);
+        b.put((byte) (this.carriesFood ? 1 : 0));
+        b.putInt(this.hitPoints);
+        // The seed is the colony's, the stream is the id, and draws start over every move.
+        b.putLong(this.step);
+    }
+
+    /**
+     * Recreates an ant written by {@code writeState}, which then behaves exactly like the original would have.
+     */
+    static PellAnt readState(final ByteBuffer b, final Tuning tuning, final Brood brood) {
+        final int id = b.getInt();
+        final Steering steering = Steering.values()[b.get()];
+        final Position position = new Position(b.getFloat(), b.getFloat());
+        final float direction = b.getFloat();
+        final float pheromoneRate = b.getFloat();
+        final float moveRate = b.getFloat();
+        final float pheromonesLeft = b.getFloat();
+        final boolean carriesFood = 0 != b.get();
+        final int hitPoints = b.getInt();
+        final long step = b.getLong();
+        final PellAnt ant = new PellAnt(position, pheromoneRate, direction, moveRate, steering, tuning, id, brood,
+                step);
+        ant.pheromonesLeft = pheromonesLeft;
+        ant.carriesFood = carriesFood;
+        ant.currentState = carriesFood ? ant.carryingState : ant.foragingState;
+        ant.hitPoints = hitPoints;
+        return ant;
+    }
+
     public Position getPosition() {
         return this.position;
     }
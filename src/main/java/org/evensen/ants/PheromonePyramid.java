@@ -0,0 +1,175 @@
+package org.evensen.ants;
+
+/**
+ * A mipmap pyramid over a pheromone grid.
+ * <p>
+ * Level 0 is the grid itself. Every following level halves the resolution, each cell holding the mean as well as
+ * the maximum of the (up to) 2x2 cells beneath it. Means are used for cheap far-away sampling, maxima for skipping
+ * empty regions hierarchically.
+ * </p>
+ * Coordinates given to the query methods are always level 0 (i.e. world) cell indices.
+ */
+public final class PheromonePyramid {
+    private final int levels;
+    private final float[][][] means;
+    private final float[][][] maxima;
+    private float[][] base;
+
+    /**
+     * @param width     Width of the level 0 grid.
+     * @param height    Height of the level 0 grid.
+     * @param maxLevels The maximum number of levels, including level 0.
+     */
+    public PheromonePyramid(final int width, final int height, final int maxLevels) {
+        int l = 1;
+        while (l < maxLevels && (1 < (width >> (l - 1)) || 1 < (height >> (l - 1)))) {
+            l++;
+        }
+        this.levels = l;
+        this.means = new float[l][][];
+        this.maxima = new float[l][][];
+        for (int i = 1; i < l; i++) {
+            final int w = (width + (1 << i) - 1) >> i;
+            final int h = (height + (1 << i) - 1) >> i;
+            this.means[i] = new float[w][h];
+            this.maxima[i] = new float[w][h];
+        }
+        this.base = new float[width][height];
+    }
+
+    /**
+     * Rebuilds all coarser levels from {@code grid}, which becomes the new level 0. The grid is referenced,
+     * not copied, so level 0 always reflects later writes while the coarser levels do not.
+     *
+     * @param grid The full resolution pheromone grid, indexed as {@code grid[x][y]}.
+     */
+    public void rebuild(final float[][] grid) {
+        this.base = grid;
+        update(0, 0, grid.length - 1, grid[0].length - 1);
+    }
+
+    /**
+     * Brings the coarser levels up to date after the level 0 cells within the inclusive rectangle
+     * {@code [x0, x1] x [y0, y1]} of the grid last given to {@code rebuild} have changed. Only the blocks above
+     * the rectangle are recomputed.
+     */
+    public void update(final int x0, final int y0, final int x1, final int y1) {
+        float[][] srcMean = this.base;
+        float[][] srcMax = this.base;
+        for (int level = 1; level < this.levels; level++) {
+            final float[][] dstMean = this.means[level];
+            final float[][] dstMax = this.maxima[level];
+            final int srcWidth = srcMean.length;
+            final int srcHeight = srcMean[0].length;
+            final int maxX = Math.min(dstMean.length - 1, x1 >> level);
+            final int maxY = Math.min(dstMean[0].length - 1, y1 >> level);
+            for (int x = Math.max(0, x0 >> level); x <= maxX; x++) {
+                final int sx0 = x << 1;
+                final int sx1 = Math.min(sx0 + 1, srcWidth - 1);
+                for (int y = Math.max(0, y0 >> level); y <= maxY; y++) {
+                    final int sy0 = y << 1;
+                    final int sy1 = Math.min(sy0 + 1, srcHeight - 1);
+                    // Duplicated edge cells keep the mean of odd-sized levels unbiased enough for sampling.
+                    dstMean[x][y] = (srcMean[sx0][sy0] + srcMean[sx1][sy0] + srcMean[sx0][sy1] + srcMean[sx1][sy1])
+                            * 0.25f;
+                    dstMax[x][y] = Math.max(Math.max(srcMax[sx0][sy0], srcMax[sx1][sy0]),
+                            Math.max(srcMax[sx0][sy1], srcMax[sx1][sy1]));
+                }
+            }
+            srcMean = dstMean;
+            srcMax = dstMax;
+        }
+    }
+
+    /**
+     * Propagates a new level 0 value at {@code <x, y>} into the maxima of all coarser levels, so that
+     * {@code anyAtLeast} never misses pheromones dropped since the last rebuild. Means are left as they are.
+     */
+    public void raise(final int x, final int y, final float value) {
+        for (int l = 1; l < this.levels; l++) {
+            final float[] column = this.maxima[l][x >> l];
+            if (column[y >> l] >= value) {
+                return;
+            }
+            column[y >> l] = value;
+        }
+    }
+
+    public int getLevels() {
+        return this.levels;
+    }
+
+    /**
+     * Gives the mean levels of all {@code 2^level x 2^level} blocks, indexed as {@code [x >> level][y >> level]}.
+     * Level 0 is the grid itself, and levels beyond the coarsest available one are clamped. The arrays are the
+     * pyramid's own and must not be written to.
+     */
+    public float[][] getMeans(final int level) {
+        return 0 >= level ? this.base : this.means[Math.min(level, this.levels - 1)];
+    }
+
+    /**
+     * Gives the mean level of the {@code 2^level x 2^level} block containing cell {@code <x, y>}.
+     * Levels beyond the coarsest available one are clamped.
+     */
+    public float mean(final int x, final int y, final int level) {
+        if (0 >= level) {
+            return this.base[x][y];
+        }
+        final int l = Math.min(level, this.levels - 1);
+        return this.means[l][x >> l][y >> l];
+    }
+
+    /**
+     * Returns {@code true} if any cell within the inclusive rectangle {@code [x0, x1] x [y0, y1]} holds a level
+     * of at least {@code threshold}. Blocks whose maximum is below the threshold are skipped without visiting
+     * their children. Parts of the rectangle that are outside the grid are ignored.
+     */
+    public boolean anyAtLeast(final int x0, final int y0, final int x1, final int y1, final float threshold) {
+        final int top = this.levels - 1;
+        final int maxX = this.base.length - 1;
+        final int maxY = this.base[0].length - 1;
+        final int cx0 = Math.max(0, x0);
+        final int cy0 = Math.max(0, y0);
+        final int cx1 = Math.min(maxX, x1);
+        final int cy1 = Math.min(maxY, y1);
+        if (cx0 > cx1 || cy0 > cy1) {
+            return false;
+        }
+        for (int bx = cx0 >> top; bx <= cx1 >> top; bx++) {
+            for (int by = cy0 >> top; by <= cy1 >> top; by++) {
+                if (anyAtLeast(top, bx, by, cx0, cy0, cx1, cy1, threshold)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean anyAtLeast(final int level, final int bx, final int by,
+                               final int x0, final int y0, final int x1, final int y1, final float threshold) {
+        if (0 == level) {
+            return this.base[bx][by] >= threshold;
+        }
+        if (this.maxima[level][bx][by] < threshold) {
+            return false;
+        }
+        final int child = level - 1;
+        final int w = 0 == child ? this.base.length : this.maxima[child].length;
+        final int h = 0 == child ? this.base[0].length : this.maxima[child][0].length;
+        for (int cx = bx << 1; cx <= (bx << 1) + 1 && cx < w; cx++) {
+            if (((cx + 1) << child) - 1 < x0 || (cx << child) > x1) {
+                continue;
+            }
+            for (int cy = by << 1; cy <= (by << 1) + 1 && cy < h; cy++) {
+                if (((cy + 1) << child) - 1 < y0 || (cy << child) > y1) {
+                    continue;
+                }
+                if (anyAtLeast(child, cx, cy, x0, y0, x1, y1, threshold)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,143 @@
+package org.evensen.ants;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+
+/**
+ * A log of a simulation run, precise enough to re-run it and check that every epoch comes out the same.
+ * <p>
+ * The log starts with the configuration, which includes the seed, and the hazards. After that come the obstacle
+ * edits, in the epoch they were applied, and a digest of the world and the colony at the end of every epoch. Only
+ * {@code FixedHazard}s can be logged, as other hazards may have state of their own.
+ * </p>
+ * The digests are folded in as the world changes, see {@code MyAntWorld.getStateDigest()}, so recording adds very
+ * little to an epoch.
+ */
+public final class ReplayLog implements Closeable {
+    private static final int MAGIC = 0x414E5452; // "ANTR"
+    private static final int VERSION = 4;
+    private static final byte OBSTACLE_EDIT = 1;
+    private static final byte EPOCH = 2;
+
+    private final DataOutputStream out;
+
+    /**
+     * @param epochs        The number of epochs re-run.
+     * @param firstMismatch The first epoch that did not come out as logged, or -1 if all of them did.
+     */
+    public record Result(long epochs, long firstMismatch) {
+        public boolean matches() {
+            return -1 == this.firstMismatch;
+        }
+    }
+
+    /**
+     * Starts a log of a simulation that has not run any epochs yet.
+     *
+     * @throws IllegalArgumentException if there is a hazard other than a {@code FixedHazard}.
+     */
+    ReplayLog(final Path path, final SimulationConfig config, final Collection<AntHazard> hazards)
+            throws IOException {
+        for (final AntHazard h : hazards) {
+            if (!(h instanceof FixedHazard)) {
+                throw new IllegalArgumentException("Can't record hazard " + h);
+            }
+        }
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+        final ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES + Checkpoint.CONFIG_BYTES);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        Checkpoint.writeConfig(header, config);
+        this.out.write(header.array());
+        this.out.writeInt(hazards.size());
+        for (final AntHazard h : hazards) {
+            this.out.writeFloat(h.getPosition().getX());
+            this.out.writeFloat(h.getPosition().getY());
+            this.out.writeFloat(h.getRadius());
+            this.out.writeInt(((FixedHazard) h).getStrength());
+        }
+    }
+
+    void obstacleEdit(final long epoch, final Position p, final boolean add) throws IOException {
+        this.out.writeByte(OBSTACLE_EDIT);
+        this.out.writeLong(epoch);
+        this.out.writeFloat(p.getX());
+        this.out.writeFloat(p.getY());
+        this.out.writeBoolean(add);
+    }
+
+    void epoch(final long epoch, final long worldDigest, final long colonyDigest) throws IOException {
+        this.out.writeByte(EPOCH);
+        this.out.writeLong(epoch);
+        this.out.writeLong(worldDigest);
+        this.out.writeLong(colonyDigest);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.out.close();
+    }
+
+    /**
+     * Re-runs a logged simulation from the start, comparing the digests after every epoch, and stops at the first
+     * epoch that differs.
+     *
+     * @throws IOException if {@code path} can't be read or is not a replay log.
+     */
+    public static Result replay(final Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            final ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES + Checkpoint.CONFIG_BYTES);
+            in.readFully(header.array());
+            if (MAGIC != header.getInt()) {
+                throw new IOException("Not a replay log");
+            }
+            final int version = header.getInt();
+            if (VERSION != version) {
+                throw new IOException("Unsupported replay log version " + version);
+            }
+            final Simulation simulation = new Simulation(Checkpoint.readConfig(header));
+            final int hazards = in.readInt();
+            for (int i = 0; i < hazards; i++) {
+                simulation.addHazard(new FixedHazard(new Position(in.readFloat(), in.readFloat()), in.readFloat(),
+                        in.readInt()));
+            }
+
+            long replayed = 0;
+            long mismatch = -1;
+            while (-1 == mismatch) {
+                final int type = in.read();
+                if (-1 == type) {
+                    break;
+                }
+                final long epoch = in.readLong();
+                if (OBSTACLE_EDIT == type) {
+                    // Queued now, applied at the start of the epoch it was logged in.
+                    simulation.setObstacle(new Position(in.readFloat(), in.readFloat()), in.readBoolean());
+                } else if (EPOCH == type) {
+                    final long worldDigest = in.readLong();
+                    final long colonyDigest = in.readLong();
+                    if (simulation.getEpoch() != epoch) {
+                        throw new IOException("Replay log skips from epoch " + simulation.getEpoch() + " to " + epoch);
+                    }
+                    simulation.step();
+                    replayed++;
+                    if (worldDigest != simulation.getWorldDigest() ||
+                            colonyDigest != simulation.getColony().computeDigest()) {
+                        mismatch = epoch;
+                    }
+                } else {
+                    throw new IOException("Corrupt replay log, record type " + type);
+                }
+            }
+            return new Result(replayed, mismatch);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package org.evensen.ants;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The model loop: a world, the colony living in it and the hazards threatening it, advanced one epoch at a time.
+ * Has no dependencies on the user interface, so it can run headless as well as behind {@code Main}.
+ * <p>
+ * The model is confined to the thread calling {@code step()}. Other threads submit obstacle edits, which are applied
+ * at the start of the next epoch, and read the state through snapshots published at the end of every epoch once
+ * {@code enableSnapshots()} has been called. Neither side ever waits for the other.
+ * </p>
+ * Checkpoints capture everything needed to continue bit-identically, except hazards and queued obstacle edits.
+ * A run can also be recorded from the start, with its obstacle edits and per-epoch digests, see {@code ReplayLog}.
+ */
+public class Simulation {
+    private final SimulationConfig config;
+    private final MyAntWorld world;
+    private final AntColony colony;
+    private final List<AntHazard> hazards;
+    private final Queue<ObstacleEdit> obstacleEdits;
+    private final AtomicReference<CheckpointRequest> pendingCheckpoint;
+    private TripleBuffer<SimulationSnapshot> snapshots;
+    private ReplayLog replayLog;
+    private long epoch;
+    private long antSteps;
+
+    private record ObstacleEdit(Position position, boolean add) {
+    }
+
+    private record CheckpointRequest(Path path, CompletableFuture<Path> written) {
+    }
+
+    public Simulation(final SimulationConfig config) {
+        this(config, createWorld(config));
+    }
+
+    private Simulation(final SimulationConfig config, final MyAntWorld world) {
+        this(config, world, new AntColony(config.getAnts(), config.getPheromoneRate(), world,
+                Hasher.hash(config.getSeed(), 1L), config.getAntTuning()));
+    }
+
+    private Simulation(final SimulationConfig config, final MyAntWorld world, final AntColony colony) {
+        this.config = config;
+        this.world = world;
+        this.colony = colony;
+        this.hazards = new ArrayList<>();
+        this.obstacleEdits = new ConcurrentLinkedQueue<>();
+        this.pendingCheckpoint = new AtomicReference<>();
+        this.epoch = 1;
+    }
+
+    private static MyAntWorld createWorld(final SimulationConfig config) {
+        return new MyAntWorld(config.getWidth(), config.getHeight(), config.getFoodSources(),
+                new MyDispersalPolicy(config.getPheromoneDropoff(), config.getPheromoneNeighbourKeep()),
+                config.getSeed(), config.getTerrain());
+    }
+
+    /**
+     * Continues a simulation from a checkpoint written after {@code requestCheckpoint}. The restored simulation
+     * behaves exactly like the original would have from that epoch on.
+     */
+    public static Simulation restore(final Path path) throws IOException {
+        final ByteBuffer b = Checkpoint.read(path);
+        final SimulationConfig config = Checkpoint.readHeader(b);
+        final long epoch = b.getLong();
+        final long antSteps = b.getLong();
+        final MyAntWorld world = createWorld(config);
+        world.readState(b);
+        final Simulation simulation = new Simulation(config, world,
+                AntColony.readState(b, world, config.getAntTuning()));
+        simulation.epoch = epoch;
+        simulation.antSteps = antSteps;
+        return simulation;
+    }
+
+    public void addHazard(final AntHazard hazard) {
+        this.hazards.add(hazard);
+    }
+
+    /**
+     * Records this run to a replay log, until {@code stopRecording()}. Must be called before the first epoch, after
+     * the hazards have been added, on the thread that will call {@code step()}.
+     *
+     * @throws IllegalStateException    if the simulation has already run or is being recorded.
+     * @throws IllegalArgumentException if a hazard can't be recorded.
+     */
+    public void startRecording(final Path path) throws IOException {
+        if (1 != this.epoch || null != this.replayLog) {
+            throw new IllegalStateException("Recording must start before the first epoch");
+        }
+        this.replayLog = new ReplayLog(path, this.config, this.hazards);
+    }
+
+    /**
+     * Stops recording and closes the replay log, if any. Must be called on the thread calling {@code step()}.
+     */
+    public void stopRecording() throws IOException {
+        if (null != this.replayLog) {
+            final ReplayLog log = this.replayLog;
+            this.replayLog = null;
+            log.close();
+        }
+    }
+
+    /**
+     * Starts publishing a snapshot at the end of every epoch, beginning with the current state. Must be called
+     * before the simulation starts stepping on another thread.
+     */
+    public void enableSnapshots() {
+        if (null == this.snapshots) {
+            this.snapshots = new TripleBuffer<>(() -> new SimulationSnapshot(this.world.createSnapshot(),
+                    new ColonySnapshot(this.colony.getDensityOriginX(), this.colony.getDensityOriginY(),
+                            this.colony.getDensityColumns(), this.colony.getDensityRows(),
+                            this.colony.getDensityCellSize())));
+            publishSnapshot();
+        }
+    }
+
+    /**
+     * @return The most recently published snapshot. It stays valid until the next call, which may be made from
+     * one thread only.
+     */
+    public SimulationSnapshot getLatestSnapshot() {
+        return this.snapshots.acquire();
+    }
+
+    /**
+     * Adds or removes an obstacle at the start of the next epoch. May be called from any thread.
+     */
+    public void setObstacle(final Position p, final boolean add) {
+        this.obstacleEdits.add(new ObstacleEdit(p, add));
+    }
+
+    /**
+     * Asks for a checkpoint to be written to {@code path}. May be called from any thread. The state is captured at
+     * the end of the next epoch with a dispersal, which is when it is cheapest to restore exactly, and written on a
+     * background thread. A request still waiting is cancelled.
+     *
+     * @return Completes with {@code path} once the checkpoint has been written.
+     */
+    public CompletableFuture<Path> requestCheckpoint(final Path path) {
+        final CheckpointRequest request = new CheckpointRequest(path, new CompletableFuture<>());
+        final CheckpointRequest replaced = this.pendingCheckpoint.getAndSet(request);
+        if (null != replaced) {
+            replaced.written().cancel(false);
+        }
+        return request.written();
+    }
+
+    /**
+     * @return {@code true} while a requested checkpoint has not been captured yet.
+     */
+    public boolean isCheckpointPending() {
+        return null != this.pendingCheckpoint.get();
+    }
+
+    /**
+     * Runs one epoch: applies pending obstacle edits, moves every ant, disperses pheromones every
+     * {@code getDispersalInterval()} epochs, lets the hazards act and publishes a snapshot if enabled.
+     */
+    public void step() {
+        applyObstacleEdits();
+        this.antSteps += this.colony.getAnts().size();
+        this.colony.updateAnts(this.world);
+        final boolean dispersed = 0 == this.epoch % this.config.getDispersalInterval();
+        if (dispersed) {
+            this.world.dispersePheromones();
+        }
+        updateHazards();
+        if (null != this.replayLog) {
+            record(() -> this.replayLog.epoch(this.epoch, getWorldDigest(), this.colony.computeDigest()));
+        }
+        this.epoch++;
+        if (dispersed && null != this.pendingCheckpoint.get()) {
+            writeCheckpoint(this.pendingCheckpoint.getAndSet(null));
+        }
+        if (null != this.snapshots) {
+            publishSnapshot();
+        }
+    }
+
+    // Captures on the model thread, which is a handful of bulk copies, and leaves the file I/O to the writer.
+    private void writeCheckpoint(final CheckpointRequest request) {
+        final ByteBuffer b = ByteBuffer.allocate(Checkpoint.HEADER_BYTES + Checkpoint.CONFIG_BYTES
+                + 2 * Long.BYTES + this.world.getStateSize() + this.colony.getStateSize());
+        Checkpoint.writeHeader(b, this.config);
+        b.putLong(this.epoch);
+        b.putLong(this.antSteps);
+        this.world.writeState(b);
+        this.colony.writeState(b);
+        Checkpoint.writeAsync(b.flip(), request.path()).whenComplete((path, e) -> {
+            if (null == e) {
+                request.written().complete(path);
+            } else {
+                request.written().completeExceptionally(e);
+            }
+        });
+    }
+
+    private void applyObstacleEdits() {
+        ObstacleEdit edit = this.obstacleEdits.poll();
+        while (null != edit) {
+            this.world.setObstacle(edit.position(), edit.add());
+            if (null != this.replayLog) {
+                final ObstacleEdit applied = edit;
+                record(() -> this.replayLog.obstacleEdit(this.epoch, applied.position(), applied.add()));
+            }
+            edit = this.obstacleEdits.poll();
+        }
+    }
+
+    private interface LogWrite {
+        void write() throws IOException;
+    }
+
+    // A failing log must not stop the model, so recording just ends.
+    private void record(final LogWrite write) {
+        try {
+            write.write();
+        } catch (final IOException e) {
+            System.err.println("Replay log failed, recording stopped: " + e.getMessage());
+            try {
+                stopRecording();
+            } catch (final IOException ignored) {
+                // Already reported.
+            }
+        }
+    }
+
+    private void updateHazards() {
+        for (final AntHazard h : this.hazards) {
+            h.update(this.world);
+            this.colony.forEachAntWithin(h.getPosition(), h.getRadius(), h::damage);
+        }
+    }
+
+    private void publishSnapshot() {
+        final SimulationSnapshot snapshot = this.snapshots.getBackBuffer();
+        this.world.copyTo(snapshot.getWorld());
+        snapshot.getColony().capture(this.colony);
+        snapshot.setEpoch(this.epoch - 1);
+        this.snapshots.publish();
+    }
+
+    /**
+     * @return The digest of the world the replay log records, see {@code MyAntWorld.getStateDigest()}.
+     */
+    long getWorldDigest() {
+        return this.world.getStateDigest();
+    }
+
+    public SimulationConfig getConfig() {
+        return this.config;
+    }
+
+    /**
+     * @return The live world. Only safe to use on the thread calling {@code step()}.
+     */
+    public AntWorld getWorld() {
+        return this.world;
+    }
+
+    /**
+     * @return The live colony. Only safe to use on the thread calling {@code step()}.
+     */
+    public AntColony getColony() {
+        return this.colony;
+    }
+
+    public Collection<AntHazard> getHazards() {
+        return this.hazards;
+    }
+
+    /**
+     * @return The number of the next epoch to run, starting at 1.
+     */
+    public long getEpoch() {
+        return this.epoch;
+    }
+
+    /**
+     * @return The number of ant updates done so far, dead ants not counted once they have been compacted away.
+     */
+    public long getAntSteps() {
+        return this.antSteps;
+    }
+}
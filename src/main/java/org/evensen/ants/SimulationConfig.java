@@ -0,0 +1,210 @@
+package org.evensen.ants;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * The parameters of a simulation run, read from {@code key=value} pairs.
+ * <p>
+ * Command line arguments are given as {@code --key=value}. If {@code --config=<file>} is given, the file is read as a
+ * properties file first and the remaining arguments override it. Unknown keys are rejected.
+ * </p>
+ */
+public final class SimulationConfig {
+    private static final List<String> KEYS = List.of(
+            "config", "width", "height", "ants", "food-sources", "pheromone-rate", "epochs", "dispersal-interval",
+            "pheromone-dropoff", "pheromone-neighbour-keep", "ant-move-rate", "pheromone-strength",
+            "pheromone-drop-rate", "seed", "terrain-coverage", "terrain-feature-size");
+
+    private final int width;
+    private final int height;
+    private final int ants;
+    private final int foodSources;
+    private final float pheromoneRate;
+    private final long epochs;
+    private final int dispersalInterval;
+    private final float pheromoneDropoff;
+    private final float pheromoneNeighbourKeep;
+    private final PellAnt.Tuning antTuning;
+    private final long seed;
+    private final MyAntWorld.Terrain terrain;
+
+    /**
+     * Uses the default dispersal, ant tuning and seed, and no terrain.
+     */
+    public SimulationConfig(final int width, final int height, final int ants, final int foodSources,
+                            final float pheromoneRate, final long epochs, final int dispersalInterval) {
+        this(width, height, ants, foodSources, pheromoneRate, epochs, dispersalInterval,
+                MyDispersalPolicy.DEFAULT_PHEROMONE_DROPOFF, MyDispersalPolicy.DEFAULT_PHEROMONE_NEIGHBOUR_KEEP,
+                PellAnt.Tuning.DEFAULT, MyAntWorld.DEFAULT_SEED);
+    }
+
+    public SimulationConfig(final int width, final int height, final int ants, final int foodSources,
+                            final float pheromoneRate, final long epochs, final int dispersalInterval,
+                            final float pheromoneDropoff, final float pheromoneNeighbourKeep,
+                            final PellAnt.Tuning antTuning, final long seed) {
+        this(width, height, ants, foodSources, pheromoneRate, epochs, dispersalInterval, pheromoneDropoff,
+                pheromoneNeighbourKeep, antTuning, seed, MyAntWorld.Terrain.NONE);
+    }
+
+    public SimulationConfig(final int width, final int height, final int ants, final int foodSources,
+                            final float pheromoneRate, final long epochs, final int dispersalInterval,
+                            final float pheromoneDropoff, final float pheromoneNeighbourKeep,
+                            final PellAnt.Tuning antTuning, final long seed, final MyAntWorld.Terrain terrain) {
+        if (0 >= width || 0 >= height || 0 > ants || 0 > foodSources || 0 > epochs || 0 >= dispersalInterval) {
+            throw new IllegalArgumentException("Invalid simulation parameters: width=" + width + ", height=" +
+                    height + ", ants=" + ants + ", food-sources=" + foodSources + ", epochs=" + epochs +
+                    ", dispersal-interval=" + dispersalInterval);
+        }
+        this.width = width;
+        this.height = height;
+        this.ants = ants;
+        this.foodSources = foodSources;
+        this.pheromoneRate = pheromoneRate;
+        this.epochs = epochs;
+        this.dispersalInterval = dispersalInterval;
+        this.pheromoneDropoff = pheromoneDropoff;
+        this.pheromoneNeighbourKeep = pheromoneNeighbourKeep;
+        this.antTuning = antTuning;
+        this.seed = seed;
+        this.terrain = terrain;
+    }
+
+    /**
+     * Parses {@code --key=value} arguments, see the class description.
+     *
+     * @throws IllegalArgumentException if an argument is malformed or unknown.
+     * @throws IOException              if a config file can't be read.
+     */
+    public static SimulationConfig fromArgs(final String... args) throws IOException {
+        final Properties arguments = new Properties();
+        for (final String arg : args) {
+            final int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || 0 > eq) {
+                throw new IllegalArgumentException("Expected --key=value, got " + arg);
+            }
+            arguments.setProperty(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+
+        final Properties properties = new Properties();
+        final String configFile = arguments.getProperty("config");
+        if (null != configFile) {
+            try (Reader in = Files.newBufferedReader(Path.of(configFile))) {
+                properties.load(in);
+            }
+        }
+        properties.putAll(arguments);
+        return fromProperties(properties);
+    }
+
+    public static SimulationConfig fromProperties(final Properties p) {
+        for (final String key : p.stringPropertyNames()) {
+            if (!KEYS.contains(key)) {
+                throw new IllegalArgumentException("Unknown parameter: " + key);
+            }
+        }
+        final int width = Integer.parseInt(p.getProperty("width", "400"));
+        final int height = Integer.parseInt(p.getProperty("height", "200"));
+        return new SimulationConfig(
+                width,
+                height,
+                Integer.parseInt(p.getProperty("ants", "10000")),
+                Integer.parseInt(p.getProperty("food-sources", "4")),
+                Float.parseFloat(p.getProperty("pheromone-rate", "0.7")),
+                Long.parseLong(p.getProperty("epochs", "1000")),
+                Integer.parseInt(p.getProperty("dispersal-interval", "5")),
+                floatProperty(p, "pheromone-dropoff", MyDispersalPolicy.DEFAULT_PHEROMONE_DROPOFF),
+                floatProperty(p, "pheromone-neighbour-keep", MyDispersalPolicy.DEFAULT_PHEROMONE_NEIGHBOUR_KEEP),
+                new PellAnt.Tuning(
+                        floatProperty(p, "ant-move-rate", PellAnt.Tuning.DEFAULT.moveRate()),
+                        floatProperty(p, "pheromone-strength", PellAnt.Tuning.DEFAULT.pheromoneStrength()),
+                        floatProperty(p, "pheromone-drop-rate", PellAnt.Tuning.DEFAULT.pheromoneDropRate())),
+                Long.parseLong(p.getProperty("seed", Long.toString(MyAntWorld.DEFAULT_SEED))),
+                new MyAntWorld.Terrain(
+                        floatProperty(p, "terrain-coverage", MyAntWorld.Terrain.NONE.coverage()),
+                        floatProperty(p, "terrain-feature-size", MyAntWorld.Terrain.NONE.featureSize())));
+    }
+
+    private static float floatProperty(final Properties p, final String key, final float defaultValue) {
+        final String value = p.getProperty(key);
+        return null == value ? defaultValue : Float.parseFloat(value);
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public int getAnts() {
+        return this.ants;
+    }
+
+    public int getFoodSources() {
+        return this.foodSources;
+    }
+
+    public float getPheromoneRate() {
+        return this.pheromoneRate;
+    }
+
+    /**
+     * @return The number of epochs to run, for runners that stop by themselves.
+     */
+    public long getEpochs() {
+        return this.epochs;
+    }
+
+    /**
+     * @return Pheromones are dispersed every this many epochs.
+     */
+    public int getDispersalInterval() {
+        return this.dispersalInterval;
+    }
+
+    public float getPheromoneDropoff() {
+        return this.pheromoneDropoff;
+    }
+
+    public float getPheromoneNeighbourKeep() {
+        return this.pheromoneNeighbourKeep;
+    }
+
+    public PellAnt.Tuning getAntTuning() {
+        return this.antTuning;
+    }
+
+    /**
+     * @return The seed everything random in the world and colony is derived from.
+     */
+    public long getSeed() {
+        return this.seed;
+    }
+
+    /**
+     * @return The procedural obstacles of the world, generated from the seed.
+     */
+    public MyAntWorld.Terrain getTerrain() {
+        return this.terrain;
+    }
+
+    @Override
+    public String toString() {
+        return "width=" + this.width + ", height=" + this.height + ", ants=" + this.ants +
+                ", food-sources=" + this.foodSources + ", pheromone-rate=" + this.pheromoneRate +
+                ", epochs=" + this.epochs + ", dispersal-interval=" + this.dispersalInterval +
+                ", pheromone-dropoff=" + this.pheromoneDropoff +
+                ", pheromone-neighbour-keep=" + this.pheromoneNeighbourKeep +
+                ", ant-move-rate=" + this.antTuning.moveRate() +
+                ", pheromone-strength=" + this.antTuning.pheromoneStrength() +
+                ", pheromone-drop-rate=" + this.antTuning.pheromoneDropRate() + ", seed=" + this.seed +
+                ", terrain-coverage=" + this.terrain.coverage() +
+                ", terrain-feature-size=" + this.terrain.featureSize();
+    }
+}
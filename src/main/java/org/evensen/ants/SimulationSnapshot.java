@@ -0,0 +1,34 @@
+package org.evensen.ants;
+
+/**
+ * The world and colony of a {@code Simulation} as they were at the end of an epoch.
+ */
+public final class SimulationSnapshot {
+    private final WorldSnapshot world;
+    private final ColonySnapshot colony;
+    private long epoch;
+
+    SimulationSnapshot(final WorldSnapshot world, final ColonySnapshot colony) {
+        this.world = world;
+        this.colony = colony;
+    }
+
+    void setEpoch(final long epoch) {
+        this.epoch = epoch;
+    }
+
+    /**
+     * @return The number of epochs run before this snapshot was taken.
+     */
+    public long getEpoch() {
+        return this.epoch;
+    }
+
+    public WorldSnapshot getWorld() {
+        return this.world;
+    }
+
+    public ColonySnapshot getColony() {
+        return this.colony;
+    }
+}
@@ -0,0 +1,66 @@
+package org.evensen.ants;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The trajectory file format shared by {@code TrajectoryRecorder} and {@code TrajectoryReader}.
+ * <p>
+ * A file is a header followed by one block per recorded epoch and, once the recorder has been closed, an index of
+ * the keyframes. A block is laid out column by column: the x, y and heading of every ant, in id order, as zigzag
+ * varints, then the states, four to a byte. Values are deltas from the previous block, except in keyframes, which
+ * hold absolute values so that reading can start there. Headings wrap, so their deltas are taken modulo a turn.
+ * </p>
+ * <pre>
+ * header: int magic, int version, int position scale, int keyframe interval, long index offset (0 if unclosed)
+ * block:  int length of the rest, long epoch, byte keyframe, int ants, int x bytes, int y bytes, int heading bytes,
+ *         x column, y column, heading column, state column
+ * index:  int keyframes, then long epoch and long block offset per keyframe
+ * </pre>
+ */
+enum TrajectoryFormat {
+    ;
+    static final int MAGIC = 0x414E5450; // "ANTP"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 4 * Integer.BYTES + Long.BYTES;
+    static final int INDEX_OFFSET_POSITION = 4 * Integer.BYTES;
+    static final int BLOCK_HEADER_BYTES = Long.BYTES + 1 + 4 * Integer.BYTES;
+
+    /**
+     * @return An upper bound on the size of a block for {@code ants} ants, its length field included.
+     */
+    static int maxBlockBytes(final int ants) {
+        return Integer.BYTES + BLOCK_HEADER_BYTES + 3 * 5 * ants + stateBytes(ants);
+    }
+
+    static int stateBytes(final int ants) {
+        return (ants + 3) / 4;
+    }
+
+    static void putVarInt(final ByteBuffer b, final int value) {
+        int v = (value << 1) ^ (value >> 31);
+        while (0 != (v & ~0x7F)) {
+            b.put((byte) (v & 0x7F | 0x80));
+            v >>>= 7;
+        }
+        b.put((byte) v);
+    }
+
+    static int getVarInt(final ByteBuffer b) {
+        int v = 0;
+        int shift = 0;
+        byte part;
+        do {
+            part = b.get();
+            v |= (part & 0x7F) << shift;
+            shift += 7;
+        } while (0 > part);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * @return The difference between two headings, in {@code [-32768, 32768)}.
+     */
+    static int headingDelta(final int heading, final int previous) {
+        return (short) (heading - previous);
+    }
+}
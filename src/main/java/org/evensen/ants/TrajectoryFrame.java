@@ -0,0 +1,75 @@
+package org.evensen.ants;
+
+import java.util.List;
+
+/**
+ * The quantized position, heading and state of every ant of a colony in one epoch, indexed by ant id.
+ * Positions are stored in steps of {@code 1 / POSITION_SCALE} world units and headings in steps of a 65536th turn,
+ * which is what the trajectory files hold.
+ */
+public final class TrajectoryFrame {
+    public static final byte FORAGING = 0;
+    public static final byte CARRYING = 1;
+    public static final byte DEAD = 2;
+    static final int POSITION_SCALE = 16;
+    private static final double HEADING_STEPS = 65536.0;
+    private static final double TAU = 2 * Math.PI;
+
+    final int[] xs;
+    final int[] ys;
+    final int[] headings;
+    final byte[] states;
+    long epoch;
+
+    TrajectoryFrame(final int ants) {
+        this.xs = new int[ants];
+        this.ys = new int[ants];
+        this.headings = new int[ants];
+        this.states = new byte[ants];
+    }
+
+    /**
+     * Quantizes {@code ants} into this frame. Every ant must have an id below {@code getAntCount()}.
+     */
+    void capture(final long epoch, final List<Ant> ants) {
+        this.epoch = epoch;
+        for (final Ant a : ants) {
+            final int id = a.getId();
+            final Position p = a.getPosition();
+            this.xs[id] = Math.round(p.getX() * POSITION_SCALE);
+            this.ys[id] = Math.round(p.getY() * POSITION_SCALE);
+            this.headings[id] = (int) Math.round(a.getDirection() * (HEADING_STEPS / TAU)) & 0xFFFF;
+            this.states[id] = a.isDead() ? DEAD : a.hasFood() ? CARRYING : FORAGING;
+        }
+    }
+
+    public long getEpoch() {
+        return this.epoch;
+    }
+
+    public int getAntCount() {
+        return this.xs.length;
+    }
+
+    public float getX(final int id) {
+        return this.xs[id] / (float) POSITION_SCALE;
+    }
+
+    public float getY(final int id) {
+        return this.ys[id] / (float) POSITION_SCALE;
+    }
+
+    /**
+     * @return The heading of ant {@code id}, in {@code [0, 2 PI)}.
+     */
+    public float getDirection(final int id) {
+        return (float) (this.headings[id] * (TAU / HEADING_STEPS));
+    }
+
+    /**
+     * @return One of {@code FORAGING}, {@code CARRYING} and {@code DEAD}.
+     */
+    public byte getState(final int id) {
+        return this.states[id];
+    }
+}
@@ -0,0 +1,201 @@
+package org.evensen.ants;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams a trajectory file written by {@code TrajectoryRecorder} back, epoch by epoch, through a memory-mapped
+ * window that slides over the file.
+ * <p>
+ * {@code next()} decodes the following epoch into the current frame, and {@code seek(epoch)} jumps to any recorded
+ * epoch by starting from the last keyframe before it. Files that were never closed have no index, so their keyframes
+ * are found by skipping through the blocks once, when the reader is opened. A block cut short at the end is ignored.
+ * </p>
+ */
+public final class TrajectoryReader implements Closeable {
+    private static final long WINDOW_BYTES = 64L << 20;
+
+    private final FileChannel channel;
+    private final long end;
+    private final long[] keyframeEpochs;
+    private final long[] keyframeOffsets;
+    private ByteBuffer window;
+    private long windowStart;
+    private long next;
+    private TrajectoryFrame frame;
+
+    public TrajectoryReader(final Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            final ByteBuffer header = ByteBuffer.allocate(TrajectoryFormat.HEADER_BYTES);
+            this.channel.read(header, 0);
+            header.flip();
+            if (TrajectoryFormat.HEADER_BYTES != header.remaining() || TrajectoryFormat.MAGIC != header.getInt()) {
+                throw new IOException("Not a trajectory file");
+            }
+            final int version = header.getInt();
+            if (TrajectoryFormat.VERSION != version) {
+                throw new IOException("Unsupported trajectory file version " + version);
+            }
+            if (TrajectoryFrame.POSITION_SCALE != header.getInt()) {
+                throw new IOException("Unsupported position scale");
+            }
+            header.getInt();
+            final long indexOffset = header.getLong();
+            final List<long[]> keyframes = new ArrayList<>();
+            if (0 != indexOffset) {
+                this.end = indexOffset;
+                final int count = block(indexOffset, Integer.BYTES).getInt();
+                final ByteBuffer index = block(indexOffset + Integer.BYTES, count * 2 * Long.BYTES);
+                for (int i = 0; i < count; i++) {
+                    keyframes.add(new long[]{index.getLong(), index.getLong()});
+                }
+            } else {
+                this.end = scan(keyframes);
+            }
+            this.keyframeEpochs = keyframes.stream().mapToLong(k -> k[0]).toArray();
+            this.keyframeOffsets = keyframes.stream().mapToLong(k -> k[1]).toArray();
+            this.next = TrajectoryFormat.HEADER_BYTES;
+        } catch (final IOException | RuntimeException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    // Finds the keyframes of an unclosed file, and returns where its last complete block ends.
+    private long scan(final List<long[]> keyframes) throws IOException {
+        final long size = this.channel.size();
+        long offset = TrajectoryFormat.HEADER_BYTES;
+        while (offset + Integer.BYTES + TrajectoryFormat.BLOCK_HEADER_BYTES <= size) {
+            final ByteBuffer b = block(offset, Integer.BYTES + TrajectoryFormat.BLOCK_HEADER_BYTES);
+            final int length = b.getInt();
+            final long epoch = b.getLong();
+            final boolean keyframe = 0 != b.get();
+            // Mapped regions leave zeros after the last block.
+            if (0 >= length || offset + Integer.BYTES + length > size) {
+                break;
+            }
+            if (keyframe) {
+                keyframes.add(new long[]{epoch, offset});
+            }
+            offset += Integer.BYTES + length;
+        }
+        return offset;
+    }
+
+    // Returns the bytes at [offset, offset + length), remapping the window if they are not all in it.
+    private ByteBuffer block(final long offset, final int length) throws IOException {
+        if (null == this.window || offset < this.windowStart ||
+                offset + length > this.windowStart + this.window.capacity()) {
+            final long size = Math.min(this.channel.size() - offset, Math.max(WINDOW_BYTES, length));
+            if (size < length) {
+                throw new IOException("Truncated trajectory file");
+            }
+            this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+            this.windowStart = offset;
+        }
+        return this.window.slice((int) (offset - this.windowStart), length);
+    }
+
+    /**
+     * Decodes the next recorded epoch into the current frame.
+     *
+     * @return {@code false} at the end of the file, leaving the current frame as it was.
+     */
+    public boolean next() throws IOException {
+        if (this.next >= this.end) {
+            return false;
+        }
+        final int length = block(this.next, Integer.BYTES).getInt();
+        final ByteBuffer b = block(this.next + Integer.BYTES, length);
+        final long epoch = b.getLong();
+        final boolean keyframe = 0 != b.get();
+        final int ants = b.getInt();
+        b.getInt();
+        b.getInt();
+        b.getInt();
+        if (null == this.frame) {
+            if (!keyframe) {
+                throw new IOException("Trajectory file does not start with a keyframe");
+            }
+            this.frame = new TrajectoryFrame(ants);
+        } else if (this.frame.getAntCount() != ants) {
+            throw new IOException("Ant count changes from " + this.frame.getAntCount() + " to " + ants);
+        }
+        getColumn(b, this.frame.xs, keyframe, false);
+        getColumn(b, this.frame.ys, keyframe, false);
+        getColumn(b, this.frame.headings, keyframe, true);
+        for (int i = 0; i < ants; i += 4) {
+            final int packed = b.get();
+            for (int j = i; j < Math.min(ants, i + 4); j++) {
+                this.frame.states[j] = (byte) (packed >>> 2 * (j - i) & 3);
+            }
+        }
+        this.frame.epoch = epoch;
+        this.next += Integer.BYTES + length;
+        return true;
+    }
+
+    private static void getColumn(final ByteBuffer b, final int[] values, final boolean keyframe,
+                                  final boolean heading) {
+        for (int i = 0; i < values.length; i++) {
+            final int value = (keyframe ? 0 : values[i]) + TrajectoryFormat.getVarInt(b);
+            values[i] = heading ? value & 0xFFFF : value;
+        }
+    }
+
+    /**
+     * Makes {@code epoch} the current frame, decoding from the last keyframe at or before it.
+     *
+     * @return {@code false} if {@code epoch} was not recorded. The position is then unspecified.
+     */
+    public boolean seek(final long epoch) throws IOException {
+        int k = -1;
+        for (int lo = 0, hi = this.keyframeEpochs.length - 1; lo <= hi; ) {
+            final int mid = (lo + hi) >>> 1;
+            if (this.keyframeEpochs[mid] <= epoch) {
+                k = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (0 > k) {
+            return false;
+        }
+        this.next = this.keyframeOffsets[k];
+        while (next()) {
+            if (this.frame.epoch >= epoch) {
+                return this.frame.epoch == epoch;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The epoch decoded last, or {@code null} before the first call to {@code next()} or {@code seek()}.
+     * It is overwritten by the next call.
+     */
+    public TrajectoryFrame getFrame() {
+        return this.frame;
+    }
+
+    /**
+     * @return The first recorded epoch, or -1 if there is none.
+     */
+    public long getFirstEpoch() {
+        return 0 == this.keyframeEpochs.length ? -1 : this.keyframeEpochs[0];
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.window = null;
+        this.channel.close();
+    }
+}
@@ -0,0 +1,220 @@
+package org.evensen.ants;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Records the path of every ant of a colony, epoch by epoch, to a trajectory file, see {@code TrajectoryFormat}.
+ * <p>
+ * The colony only quantizes its ants into a frame taken from a fixed ring of frames and hands it over. Encoding and
+ * writing, to a memory-mapped file, happen on a writer thread of the recorder's own. If the writer falls behind by
+ * the whole ring, the colony waits for it, so no epoch is ever lost.
+ * </p>
+ * Ants are identified by {@code Ant.getId()}, so every ant must have an id, and ids must be below the colony size.
+ */
+public final class TrajectoryRecorder implements Closeable {
+    public static final int DEFAULT_RING_SIZE = 16;
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 256;
+    private static final long REGION_BYTES = 64L << 20; // Map the file 64 MB at a time.
+    private static final TrajectoryFrame END = new TrajectoryFrame(0);
+
+    private final FileChannel channel;
+    private final int ringSize;
+    private final int keyframeInterval;
+    private final BlockingQueue<TrajectoryFrame> free;
+    private final BlockingQueue<TrajectoryFrame> full;
+    private final List<long[]> keyframes;
+    private Thread writer;
+    private volatile IOException failure;
+
+    // Owned by the writer thread.
+    private int[] previousXs;
+    private int[] previousYs;
+    private int[] previousHeadings;
+    private ByteBuffer scratch;
+    private MappedByteBuffer region;
+    private long position;
+    private long blocks;
+
+    public TrajectoryRecorder(final Path path) throws IOException {
+        this(path, DEFAULT_RING_SIZE, DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    /**
+     * @param ringSize         Number of epochs that may be waiting to be written.
+     * @param keyframeInterval Every this many blocks hold absolute values, bounding how far a seek has to decode.
+     */
+    public TrajectoryRecorder(final Path path, final int ringSize, final int keyframeInterval) throws IOException {
+        if (0 >= ringSize || 0 >= keyframeInterval) {
+            throw new IllegalArgumentException("Invalid ring size " + ringSize + " or keyframe interval " +
+                    keyframeInterval);
+        }
+        this.ringSize = ringSize;
+        this.keyframeInterval = keyframeInterval;
+        this.free = new ArrayBlockingQueue<>(ringSize);
+        this.full = new ArrayBlockingQueue<>(ringSize + 1);
+        this.keyframes = new ArrayList<>();
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final ByteBuffer header = ByteBuffer.allocate(TrajectoryFormat.HEADER_BYTES);
+        header.putInt(TrajectoryFormat.MAGIC);
+        header.putInt(TrajectoryFormat.VERSION);
+        header.putInt(TrajectoryFrame.POSITION_SCALE);
+        header.putInt(keyframeInterval);
+        header.putLong(0L);
+        this.channel.write(header.flip(), 0);
+        this.position = TrajectoryFormat.HEADER_BYTES;
+    }
+
+    /**
+     * Records the ants at the end of {@code epoch}. Called by the colony, on the thread updating it.
+     */
+    void record(final long epoch, final List<Ant> live, final List<Ant> dead) {
+        if (null == this.writer) {
+            final int ants = live.size() + dead.size();
+            for (final Ant a : live) {
+                if (0 > a.getId() || ants <= a.getId()) {
+                    throw new IllegalStateException("Ant without a usable id: " + a.getId());
+                }
+            }
+            start(ants);
+        }
+        try {
+            final TrajectoryFrame frame = this.free.take();
+            frame.capture(epoch, live);
+            frame.capture(epoch, dead);
+            this.full.put(frame);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void start(final int ants) {
+        for (int i = 0; i < this.ringSize; i++) {
+            this.free.add(new TrajectoryFrame(ants));
+        }
+        this.previousXs = new int[ants];
+        this.previousYs = new int[ants];
+        this.previousHeadings = new int[ants];
+        this.scratch = ByteBuffer.allocate(TrajectoryFormat.maxBlockBytes(ants));
+        this.writer = new Thread(this::write, "trajectory-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    private void write() {
+        try {
+            TrajectoryFrame frame = this.full.take();
+            while (END != frame) {
+                if (null == this.failure) {
+                    try {
+                        writeBlock(frame);
+                    } catch (final IOException e) {
+                        // Keep recycling frames so the colony never blocks on a dead writer.
+                        this.failure = e;
+                    }
+                }
+                this.free.put(frame);
+                frame = this.full.take();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeBlock(final TrajectoryFrame frame) throws IOException {
+        final boolean keyframe = 0 == this.blocks % this.keyframeInterval;
+        if (keyframe) {
+            this.keyframes.add(new long[]{frame.epoch, this.position});
+        }
+        final int ants = frame.getAntCount();
+        final ByteBuffer b = this.scratch.clear();
+        b.position(Integer.BYTES + TrajectoryFormat.BLOCK_HEADER_BYTES);
+        final int xBytes = putColumn(b, frame.xs, this.previousXs, keyframe, false);
+        final int yBytes = putColumn(b, frame.ys, this.previousYs, keyframe, false);
+        final int headingBytes = putColumn(b, frame.headings, this.previousHeadings, keyframe, true);
+        for (int i = 0; i < ants; i += 4) {
+            int packed = 0;
+            for (int j = i; j < Math.min(ants, i + 4); j++) {
+                packed |= frame.states[j] << 2 * (j - i);
+            }
+            b.put((byte) packed);
+        }
+        final int length = b.position();
+        b.position(0);
+        b.putInt(length - Integer.BYTES);
+        b.putLong(frame.epoch);
+        b.put((byte) (keyframe ? 1 : 0));
+        b.putInt(ants);
+        b.putInt(xBytes);
+        b.putInt(yBytes);
+        b.putInt(headingBytes);
+        b.position(0).limit(length);
+
+        if (null == this.region || this.region.remaining() < length) {
+            this.region = this.channel.map(FileChannel.MapMode.READ_WRITE, this.position,
+                    Math.max(REGION_BYTES, length));
+        }
+        this.region.put(b);
+        this.position += length;
+        this.blocks++;
+    }
+
+    // Writes the deltas from the previous values, which it then updates, and returns the number of bytes written.
+    private static int putColumn(final ByteBuffer b, final int[] values, final int[] previous,
+                                 final boolean keyframe, final boolean heading) {
+        final int start = b.position();
+        for (int i = 0; i < values.length; i++) {
+            final int base = keyframe ? 0 : previous[i];
+            TrajectoryFormat.putVarInt(b, heading ? TrajectoryFormat.headingDelta(values[i], base) : values[i] - base);
+            previous[i] = values[i];
+        }
+        return b.position() - start;
+    }
+
+    /**
+     * Writes the remaining epochs and the index, and closes the file.
+     *
+     * @throws IOException if anything could not be written, now or earlier on the writer thread.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (null != this.writer) {
+                this.full.put(END);
+                this.writer.join();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing the trajectory file", e);
+        }
+        try (FileChannel c = this.channel) {
+            if (null != this.failure) {
+                throw this.failure;
+            }
+            if (null != this.region) {
+                this.region.force();
+                this.region = null;
+            }
+            final ByteBuffer index = ByteBuffer.allocate(Integer.BYTES + this.keyframes.size() * 2 * Long.BYTES);
+            index.putInt(this.keyframes.size());
+            for (final long[] keyframe : this.keyframes) {
+                index.putLong(keyframe[0]);
+                index.putLong(keyframe[1]);
+            }
+            c.truncate(this.position);
+            c.write(index.flip(), this.position);
+            c.write(ByteBuffer.allocate(Long.BYTES).putLong(0, this.position), TrajectoryFormat.INDEX_OFFSET_POSITION);
+            c.force(true);
+        }
+    }
+}
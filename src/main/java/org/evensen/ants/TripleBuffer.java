@@ -0,0 +1,61 @@
+package org.evensen.ants;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hands buffers from one writer thread to one reader thread without either of them ever waiting for the other.
+ * <p>
+ * The writer fills the back buffer and publishes it; the reader takes the most recently published buffer. The third
+ * buffer sits between them, so the writer always has a buffer the reader is not looking at. Buffers are reused, so a
+ * newly acquired back buffer holds whatever was written to it two publications ago.
+ * </p>
+ *
+ * @param <T> The buffer type.
+ */
+public final class TripleBuffer<T> {
+    private static final int FRESH = 4;
+    private static final int INDEX = 3;
+
+    private final Object[] buffers;
+    private final AtomicInteger middle;
+    private int back;
+    private int front;
+
+    /**
+     * @param factory Creates each of the three buffers.
+     */
+    public TripleBuffer(final Supplier<T> factory) {
+        this.buffers = new Object[]{factory.get(), factory.get(), factory.get()};
+        this.front = 0;
+        this.middle = new AtomicInteger(1);
+        this.back = 2;
+    }
+
+    /**
+     * @return The buffer to write to next. Writer thread only.
+     */
+    @SuppressWarnings("unchecked")
+    public T getBackBuffer() {
+        return (T) this.buffers[this.back];
+    }
+
+    /**
+     * Makes the back buffer the latest published one and swaps in a new back buffer. Writer thread only.
+     */
+    public void publish() {
+        this.back = this.middle.getAndSet(this.back | FRESH) & INDEX;
+    }
+
+    /**
+     * @return The latest published buffer, which stays untouched by the writer until the next call.
+     * Reader thread only.
+     */
+    @SuppressWarnings("unchecked")
+    public T acquire() {
+        if (0 != (this.middle.get() & FRESH)) {
+            this.front = this.middle.getAndSet(this.front) & INDEX;
+        }
+        return (T) this.buffers[this.front];
+    }
+}
@@ -0,0 +1,249 @@
+package org.evensen.ants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A read-only copy of a {@code MyAntWorld} as it was at the end of an epoch, for rendering on another thread.
+ * <p>
+ * Pheromone grids are copied every epoch, tile by tile, skipping the tiles that have not changed visibly. Food,
+ * obstacles and carcasses are only copied when their version has changed, so the versions may also be used to tell
+ * when cached renderings are stale. The stamps of the pheromone tiles serve the same purpose per tile. The coarser
+ * pheromone levels are brought up to date by the reader the first time they are asked for, above the changed
+ * tiles only.
+ * </p>
+ */
+public final class WorldSnapshot implements AntWorldView {
+    /**
+     * The cells within {@code radius} of {@code center}, which hold the food of one food source.
+     */
+    public record FoodPatch(Position center, int radius) {
+    }
+
+    private final int width;
+    private final int height;
+    private final boolean[][] home;
+    private final List<Position> nests;
+    private final PheromonePyramid foodPyramid;
+    private final PheromonePyramid foragingPyramid;
+    private final int tileRows;
+    private final boolean[] pyramidTilesStale;
+    private boolean pyramidsBuilt;
+    private boolean pyramidsValid;
+
+    // Written by the owning world
+    final float[][] foodPheromone;
+    final float[][] foragingPheromone;
+    final boolean[][] food;
+    final List<FoodPatch> foodPatches;
+    final boolean[][] obstacles;
+    final int[][] deadAnts;
+    final long[] pheromoneTileStamps;
+    final long[] obstacleTileVersions;
+    long pheromoneStamp;
+    long foodCount;
+    long foodVersion;
+    long obstacleVersion;
+    long deadAntVersion;
+
+    WorldSnapshot(final int width, final int height, final int levels,
+                  final boolean[][] home, final List<Position> nests) {
+        this.width = width;
+        this.height = height;
+        this.home = home;
+        this.nests = nests;
+        this.foodPyramid = new PheromonePyramid(width, height, levels);
+        this.foragingPyramid = new PheromonePyramid(width, height, levels);
+        this.foodPheromone = new float[width][height];
+        this.foragingPheromone = new float[width][height];
+        this.food = new boolean[width][height];
+        this.foodPatches = new ArrayList<>();
+        this.obstacles = new boolean[width][height];
+        this.deadAnts = new int[width][height];
+        final int tileColumns = (width + MyAntWorld.TILE_SIZE - 1) / MyAntWorld.TILE_SIZE;
+        this.tileRows = (height + MyAntWorld.TILE_SIZE - 1) / MyAntWorld.TILE_SIZE;
+        this.pheromoneTileStamps = new long[tileColumns * this.tileRows];
+        this.pyramidTilesStale = new boolean[tileColumns * this.tileRows];
+        this.obstacleTileVersions = new long[tileColumns * this.tileRows];
+        this.pheromoneStamp = -1;
+        this.foodVersion = -1;
+        this.obstacleVersion = -1;
+        this.deadAntVersion = -1;
+    }
+
+    /**
+     * Called by the world after it has written new pheromone levels to the given tile.
+     */
+    void tileChanged(final int tile) {
+        this.pyramidTilesStale[tile] = true;
+        this.pyramidsValid = false;
+    }
+
+    private void ensurePyramids() {
+        if (this.pyramidsValid) {
+            return;
+        }
+        if (!this.pyramidsBuilt) {
+            this.foodPyramid.rebuild(this.foodPheromone);
+            this.foragingPyramid.rebuild(this.foragingPheromone);
+            Arrays.fill(this.pyramidTilesStale, false);
+            this.pyramidsBuilt = true;
+        }
+        for (int t = 0; t < this.pyramidTilesStale.length; t++) {
+            if (this.pyramidTilesStale[t]) {
+                final int x0 = t / this.tileRows * MyAntWorld.TILE_SIZE;
+                final int y0 = t % this.tileRows * MyAntWorld.TILE_SIZE;
+                final int x1 = x0 + MyAntWorld.TILE_SIZE - 1;
+                final int y1 = y0 + MyAntWorld.TILE_SIZE - 1;
+                this.foodPyramid.update(x0, y0, x1, y1);
+                this.foragingPyramid.update(x0, y0, x1, y1);
+                this.pyramidTilesStale[t] = false;
+            }
+        }
+        this.pyramidsValid = true;
+    }
+
+    /**
+     * @return The stamp of the pheromone levels copied last. It grows with every copy.
+     */
+    public long getPheromoneStamp() {
+        return this.pheromoneStamp;
+    }
+
+    /**
+     * @return The stamp of the last copy that visibly changed the pheromones of the tile at column {@code tileX}
+     * and row {@code tileY}, tiles being {@code MyAntWorld.TILE_SIZE} cells square.
+     */
+    public long getPheromoneTileStamp(final int tileX, final int tileY) {
+        return this.pheromoneTileStamps[tileX * this.tileRows + tileY];
+    }
+
+    /**
+     * @return The obstacle version at which the obstacles of the tile at column {@code tileX} and row {@code tileY}
+     * last changed.
+     */
+    public long getObstacleTileVersion(final int tileX, final int tileY) {
+        return this.obstacleTileVersions[tileX * this.tileRows + tileY];
+    }
+
+    public int getTileColumns() {
+        return this.pheromoneTileStamps.length / this.tileRows;
+    }
+
+    public int getTileRows() {
+        return this.tileRows;
+    }
+
+    /**
+     * @return A number that changes whenever the food cells change.
+     */
+    public long getFoodVersion() {
+        return this.foodVersion;
+    }
+
+    /**
+     * @return The food sources that still hold food, as of {@code getFoodVersion}.
+     */
+    public List<FoodPatch> getFoodPatches() {
+        return Collections.unmodifiableList(this.foodPatches);
+    }
+
+    /**
+     * @return A number that changes whenever the obstacles change.
+     */
+    public long getObstacleVersion() {
+        return this.obstacleVersion;
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    @Override
+    public boolean isObstacle(final Position p) {
+        return !p.isInBounds(this.width, this.height) || this.obstacles[p.floorX()][p.floorY()];
+    }
+
+    @Override
+    public float getDeadAntCount(final Position p) {
+        return p.isInBounds(this.width, this.height) ? this.deadAnts[p.floorX()][p.floorY()] : 0.0f;
+    }
+
+    @Override
+    public float getForagingStrength(final Position p) {
+        return this.foragingPheromone[p.floorX()][p.floorY()];
+    }
+
+    @Override
+    public float getFoodStrength(final Position p) {
+        return this.foodPheromone[p.floorX()][p.floorY()];
+    }
+
+    @Override
+    public float getForagingStrength(final Position p, final int level) {
+        ensurePyramids();
+        return this.foragingPyramid.mean(p.floorX(), p.floorY(), level);
+    }
+
+    @Override
+    public float getFoodStrength(final Position p, final int level) {
+        ensurePyramids();
+        return this.foodPyramid.mean(p.floorX(), p.floorY(), level);
+    }
+
+    /**
+     * @return The food pheromone levels at the given level of detail, see {@code PheromonePyramid.getMeans}, for
+     * bulk reading. They must not be written to.
+     */
+    public float[][] getFoodPheromones(final int level) {
+        if (0 >= level) {
+            return this.foodPheromone;
+        }
+        ensurePyramids();
+        return this.foodPyramid.getMeans(level);
+    }
+
+    /**
+     * @return The foraging pheromone levels at the given level of detail, as {@code getFoodPheromones}.
+     */
+    public float[][] getForagingPheromones(final int level) {
+        if (0 >= level) {
+            return this.foragingPheromone;
+        }
+        ensurePyramids();
+        return this.foragingPyramid.getMeans(level);
+    }
+
+    @Override
+    public int getPheromoneLevels() {
+        return this.foodPyramid.getLevels();
+    }
+
+    @Override
+    public boolean containsFood(final Position p) {
+        return this.food[p.floorX()][p.floorY()];
+    }
+
+    @Override
+    public long getFoodCount() {
+        return this.foodCount;
+    }
+
+    @Override
+    public boolean isHome(final Position p) {
+        return p.isInBounds(this.width, this.height) && this.home[p.floorX()][p.floorY()];
+    }
+
+    @Override
+    public List<Position> getNests() {
+        return this.nests;
+    }
+}
@@ -0,0 +1,73 @@
+package org.evensen.ants;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Standard normal variates by Marsaglia and Tsang's ziggurat method, with 128 layers.
+ * <p>
+ * About 98.8% of the samples cost one {@code nextLong()}, a table lookup, a compare and a multiply. The layer is
+ * taken from the low bits of the draw and the sample from the high ones, so the two are independent, which avoids
+ * the correlation of the original 32-bit version.
+ * </p>
+ */
+public enum Ziggurat {
+    ;
+    private static final int LAYERS = 128;
+    private static final double R = 3.442619855899; // Start of the tail.
+    private static final double INV_R = 1.0 / R;
+    private static final double LAYER_AREA = 9.91256303526217e-3;
+    private static final double M1 = 2147483648.0; // 2^31
+    private static final long[] K = new long[LAYERS];
+    private static final double[] W = new double[LAYERS];
+    private static final double[] F = new double[LAYERS];
+
+    static {
+        double dn = R;
+        double tn = dn;
+        final double q = LAYER_AREA / Math.exp(-0.5 * dn * dn);
+        K[0] = (long) (dn / q * M1);
+        K[1] = 0;
+        W[0] = q / M1;
+        W[LAYERS - 1] = dn / M1;
+        F[0] = 1.0;
+        F[LAYERS - 1] = Math.exp(-0.5 * dn * dn);
+        for (int i = LAYERS - 2; 1 <= i; i--) {
+            dn = Math.sqrt(-2.0 * Math.log(LAYER_AREA / dn + Math.exp(-0.5 * dn * dn)));
+            K[i + 1] = (long) (dn / tn * M1);
+            tn = dn;
+            F[i] = Math.exp(-0.5 * dn * dn);
+            W[i] = dn / M1;
+        }
+    }
+
+    /**
+     * @return A sample of N(0, 1) drawn from {@code source}.
+     */
+    public static double sample(final RandomGenerator source) {
+        long r = source.nextLong();
+        int layer = (int) r & (LAYERS - 1);
+        int hz = (int) (r >> 32);
+        while (true) {
+            if (Math.abs((long) hz) < K[layer]) {
+                return hz * W[layer];
+            }
+            if (0 == layer) {
+                // The base layer's tail beyond R, sampled by Marsaglia's exponential method.
+                double x;
+                double y;
+                do {
+                    x = -Math.log(source.nextDouble()) * INV_R;
+                    y = -Math.log(source.nextDouble());
+                } while (y + y < x * x);
+                return 0 < hz ? R + x : -R - x;
+            }
+            final double x = hz * W[layer];
+            if (F[layer] + source.nextDouble() * (F[layer - 1] - F[layer]) < Math.exp(-0.5 * x * x)) {
+                return x;
+            }
+            r = source.nextLong();
+            layer = (int) r & (LAYERS - 1);
+            hz = (int) (r >> 32);
+        }
+    }
+}
@@ -1,12 +1,10 @@
 package org.evensen.ants.render;
 
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
-import org.evensen.ants.AntColony;
-import org.evensen.ants.Ant;
-
-import java.util.List;
-import java.util.ArrayList;
+import org.evensen.ants.ColonySnapshot;
 
 
 public enum AntColonyRenderer {
@@ -14,28 +12,33 @@ public enum AntColonyRenderer {
     private static final Color FORAGING_ANT_COLOR = Color.color(0.4, 0.4, 1.0, 0.5);
     private static final Color FOOD_CARRYING_ANT_COLOR = Color.color(0.7, 0.7, 0.0, 0.5);
     private static final Color DEAD_ANT_COLOR = Color.color(0.8, 0.0, 0.0, 0.5);
+    private static final int DENSITY_SATURATION = 32;
     private static long renderingTime = 0;
     private static long renders = 0;
+    private static int[] densityCounts = new int[0];
+    private static int[] carryingCounts = new int[0];
+    private static int[] densityPixels = new int[0];
+    private static WritableImage densityImage;
 
-    public static void render(final GraphicsContext g, final AntColony colony) {
+    public static void render(final GraphicsContext g, final ColonySnapshot colony) {
         long startTime = System.nanoTime();
         renders++;
         g.save();
 
         g.setLineWidth(0.5);
         g.setFill(Color.BLACK);
-        List<Ant> colonyView = new ArrayList<>(colony.getAnts());
 
-        for (final Ant ant : colonyView) {
-            final float antX1 = (float) (Math.cos(ant.getDirection()) + ant.getPosition().getX());
-            final float antX2 = (float) (Math.cos(ant.getDirection() + Math.PI) + ant.getPosition().getX());
-            final float antY1 = (float) (Math.sin(ant.getDirection()) + ant.getPosition().getY());
-            final float antY2 = (float) (Math.sin(ant.getDirection() + Math.PI) + ant.getPosition().getY());
+        for (int i = 0; i < colony.getAntCount(); i++) {
+            final float direction = colony.getDirection(i);
+            final float antX1 = (float) (Math.cos(direction) + colony.getX(i));
+            final float antX2 = (float) (Math.cos(direction + Math.PI) + colony.getX(i));
+            final float antY1 = (float) (Math.sin(direction) + colony.getY(i));
+            final float antY2 = (float) (Math.sin(direction + Math.PI) + colony.getY(i));
             Color tailColor;
-            if(ant.isDead()) {
+            if(colony.isDead(i)) {
                 tailColor = DEAD_ANT_COLOR;
             } else {
-                tailColor = ant.hasFood() ? FOOD_CARRYING_ANT_COLOR : FORAGING_ANT_COLOR;
+                tailColor = colony.hasFood(i) ? FOOD_CARRYING_ANT_COLOR : FORAGING_ANT_COLOR;
             }
             g.setStroke(tailColor);
             g.strokeLine(antX1, antY1, antX2, antY2);
@@ -51,4 +54,43 @@ public enum AntColonyRenderer {
 
          */
     }
+
+    /**
+     * Draws the colony as a heatmap of the ant density instead of drawing every ant, which is much cheaper for
+     * large colonies. Hue goes from foraging to food carrying with the share of carrying ants in each cell.
+     */
+    public static void renderDensity(final GraphicsContext g, final ColonySnapshot colony) {
+        final int columns = colony.getDensityColumns();
+        final int rows = colony.getDensityRows();
+        final int cells = columns * rows;
+        if (densityCounts.length != cells) {
+            densityCounts = new int[cells];
+            carryingCounts = new int[cells];
+            densityPixels = new int[cells];
+            densityImage = new WritableImage(columns, rows);
+        }
+        colony.copyDensity(densityCounts, carryingCounts);
+
+        final double logSaturation = Math.log1p(DENSITY_SATURATION);
+        for (int i = 0; i < cells; i++) {
+            final int n = densityCounts[i];
+            if (0 == n) {
+                densityPixels[i] = 0;
+                continue;
+            }
+            final double carrying = carryingCounts[i] / (double) n;
+            final Color c = FORAGING_ANT_COLOR.interpolate(FOOD_CARRYING_ANT_COLOR, carrying);
+            final double alpha = Math.min(1.0, Math.log1p(n) / logSaturation);
+            densityPixels[i] = ((int) Math.round(255.0 * alpha) << 24)
+                    | ((int) Math.round(255.0 * c.getRed()) << 16)
+                    | ((int) Math.round(255.0 * c.getGreen()) << 8)
+                    | ((int) Math.round(255.0 * c.getBlue()));
+        }
+        densityImage.getPixelWriter().setPixels(
+                0, 0, columns, rows, PixelFormat.getIntArgbInstance(), densityPixels, 0, columns);
+
+        final int cellSize = colony.getDensityCellSize();
+        g.drawImage(densityImage, colony.getDensityOriginX(), colony.getDensityOriginY(), columns * cellSize,
+                rows * cellSize);
+    }
 }
@@ -5,14 +5,59 @@ import javafx.scene.image.PixelFormat;
 import javafx.scene.image.PixelWriter;
 import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
+import org.evensen.ants.AntWorldView;
+import org.evensen.ants.GraphicsMath;
+import org.evensen.ants.MyAntWorld;
+import org.evensen.ants.Position;
+import org.evensen.ants.WorldSnapshot;
 
-import java.util.List;
+import java.util.Arrays;
+import java.util.stream.IntStream;
 
-public enum AntWorldRenderer {
-    ;
+/**
+ * Renders the pheromones and the homes of a {@code WorldSnapshot}.
+ * <p>
+ * Both pheromones and the homes are composited into one raster, which is drawn with a single call. The raster, its
+ * pixel buffer and the home mask are kept between frames and only reallocated when the level of detail changes.
+ * Pheromone levels are turned into opacity through a lookup table.
+ * </p>
+ * <p>
+ * The raster is kept in tiles of {@code MyAntWorld.TILE_SIZE} pixels square. Only the tiles over world
+ * tiles whose pheromones have changed since the last frame, going by their stamps, are recomputed, spread over all
+ * cores, and written to the raster, so the cost of a frame follows the activity rather than the size of the world.
+ * </p>
+ */
+public final class AntWorldRenderer {
     private static final int HOME_COLOR = convertToARGB(Color.color(1.0, 0.2, 0.1, 0.8));
     private static final int BASE_FOOD_CARRYING_SCENT_COLOR = convertToBaseRGB(Color.color(0.8, 0.8, 0.0));
     private static final int BASE_FORAGING_SCENT_COLOR = convertToBaseRGB(Color.color(0.0, 0.4, 0.7));
+    private static final int ALPHA_TABLE_SIZE = 4096;
+    private static final float ALPHA_SATURATION = 1.0f / 15.0f; // Levels from here on are fully opaque.
+    private static final float ALPHA_TABLE_SCALE = (ALPHA_TABLE_SIZE - 1) / ALPHA_SATURATION;
+    private static final float[] ALPHA_TABLE = new float[ALPHA_TABLE_SIZE];
+    private static final int TILE_SIZE = MyAntWorld.TILE_SIZE;
+
+    static {
+        for (int i = 0; i < ALPHA_TABLE_SIZE; i++) {
+            ALPHA_TABLE[i] = pheromoneAlpha(i / ALPHA_TABLE_SCALE) / 255.0f;
+        }
+    }
+
+    private WritableImage image;
+    private int[] pixels;
+    private boolean[] home;
+    private boolean[] dirtyTiles;
+    private int[] tileQueue;
+    private int width;
+    private int height;
+    private int level;
+    private int tileColumns;
+    private int tileRows;
+    private long stamp;
+
+    public AntWorldRenderer() {
+        this.level = -1;
+    }
 
     private static int convertToBaseRGB(Color color) {
         return ((int) Math.round(255.0 * color.getRed()) << 16)
@@ -28,45 +73,120 @@ public enum AntWorldRenderer {
     }
 
     private static int pheromoneAlpha(float strength) {
-        return Math.min(255, (Math.round(org.evensen.ants.GraphicsMath.bias(strength * 15f, 0.97f) * 255.0f))) << 24;
+        return Math.min(255, Math.round(GraphicsMath.bias(strength * 15f, 0.97f) * 255.0f));
+    }
+
+    private static float alpha(final float strength) {
+        return ALPHA_TABLE[Math.min(ALPHA_TABLE_SIZE - 1, (int) (strength * ALPHA_TABLE_SCALE + 0.5f))];
+    }
+
+    public void render(GraphicsContext g, WorldSnapshot world) {
+        render(g, world, 0);
+    }
+
+    /**
+     * Renders the pheromones using the given level of detail. Each rendered pixel covers
+     * {@code 2^level x 2^level} world cells, which is cheaper and less noisy when zoomed out.
+     *
+     * @param level The requested level of detail, clamped to what {@code world} offers.
+     */
+    public void render(GraphicsContext g, WorldSnapshot world, int level) {
+        final int l = Math.max(0, Math.min(level, world.getPheromoneLevels() - 1));
+        final int w = (world.getWidth() + (1 << l) - 1) >> l;
+        final int h = (world.getHeight() + (1 << l) - 1) >> l;
+        if (l != this.level || w != this.width || h != this.height) {
+            allocate(world, l, w, h);
+        } else if (world.getPheromoneStamp() != this.stamp) {
+            // A world tile covers cells [16 tx, 16 tx + 16), which are all under raster tile tx >> l
+            for (int tx = 0; tx < world.getTileColumns(); tx++) {
+                for (int ty = 0; ty < world.getTileRows(); ty++) {
+                    if (world.getPheromoneTileStamp(tx, ty) > this.stamp) {
+                        this.dirtyTiles[(tx >> l) * this.tileRows + (ty >> l)] = true;
+                    }
+                }
+            }
+        }
+
+        int dirty = 0;
+        for (int t = 0; t < this.dirtyTiles.length; t++) {
+            if (this.dirtyTiles[t]) {
+                this.tileQueue[dirty++] = t;
+                this.dirtyTiles[t] = false;
+            }
+        }
+        if (0 < dirty) {
+            final float[][] food = world.getFoodPheromones(l);
+            final float[][] foraging = world.getForagingPheromones(l);
+            IntStream.range(0, dirty).parallel().forEach(k -> renderTile(food, foraging, this.tileQueue[k]));
+            final PixelWriter writer = this.image.getPixelWriter();
+            for (int k = 0; k < dirty; k++) {
+                final int x0 = this.tileQueue[k] / this.tileRows * TILE_SIZE;
+                final int y0 = this.tileQueue[k] % this.tileRows * TILE_SIZE;
+                writer.setPixels(x0, y0, Math.min(TILE_SIZE, w - x0), Math.min(TILE_SIZE, h - y0),
+                        PixelFormat.getIntArgbPreInstance(), this.pixels, y0 * w + x0, w);
+            }
+        }
+        this.stamp = world.getPheromoneStamp();
+        g.drawImage(this.image, 0, 0, w << l, h << l);
     }
 
-    public static void render(GraphicsContext g, org.evensen.ants.AntWorld world) {
-        g.save();
-     //   g.setGlobalBlendMode(BlendMode.ADD);
-
-        final int[] foodPheromonePixels = new int[world.getWidth() * world.getHeight()];
-        final int[] foragingPheromonePixels = new int[world.getWidth() * world.getHeight()];
-        final int[] homePixels = new int[world.getWidth() * world.getHeight()];
-        int i = 0;
-        for (int y = 0; y < world.getHeight(); y++) {
-            for (int x = 0; x < world.getWidth(); x++) {
-                final org.evensen.ants.Position p = new org.evensen.ants.Position(x, y);
-                foodPheromonePixels[i] = BASE_FOOD_CARRYING_SCENT_COLOR | pheromoneAlpha(world.getFoodStrength(p));
-                foragingPheromonePixels[i] = BASE_FORAGING_SCENT_COLOR | pheromoneAlpha(world.getForagingStrength(p));
-                homePixels[i] = world.isHome(p) ? HOME_COLOR : 0x000000;
-                ++i;
+    private void renderTile(final float[][] food, final float[][] foraging, final int tile) {
+        final int x0 = tile / this.tileRows * TILE_SIZE;
+        final int y0 = tile % this.tileRows * TILE_SIZE;
+        final int x1 = Math.min(this.width, x0 + TILE_SIZE);
+        final int y1 = Math.min(this.height, y0 + TILE_SIZE);
+        // Down the columns of the [x][y] grids, across the rows of the raster
+        for (int x = x0; x < x1; x++) {
+            final float[] foodColumn = food[x];
+            final float[] foragingColumn = foraging[x];
+            for (int y = y0; y < y1; y++) {
+                final int i = y * this.width + x;
+                this.pixels[i] = composite(alpha(foragingColumn[y]), alpha(foodColumn[y]), this.home[i]);
             }
         }
+    }
 
-        for (int[] pixels : List.of(
-                foragingPheromonePixels,
-                foodPheromonePixels,
-                homePixels)) {
-            WritableImage raster = new WritableImage(world.getWidth(), world.getHeight());
-            PixelWriter pixelWriter = raster.getPixelWriter();
-            pixelWriter.setPixels(
-                    0,
-                    0,
-                    world.getWidth(),
-                    world.getHeight(),
-                    PixelFormat.getIntArgbInstance(),
-                    pixels,
-                    0,
-                    world.getWidth());
-            g.drawImage(raster, 0, 0);
+    private void allocate(final AntWorldView world, final int l, final int w, final int h) {
+        this.image = new WritableImage(w, h);
+        this.pixels = new int[w * h];
+        this.home = new boolean[w * h];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                this.home[y * w + x] = world.isHome(new Position(x << l, y << l));
+            }
         }
+        this.width = w;
+        this.height = h;
+        this.level = l;
+        this.tileColumns = (w + TILE_SIZE - 1) / TILE_SIZE;
+        this.tileRows = (h + TILE_SIZE - 1) / TILE_SIZE;
+        this.dirtyTiles = new boolean[this.tileColumns * this.tileRows];
+        this.tileQueue = new int[this.dirtyTiles.length];
+        Arrays.fill(this.dirtyTiles, true);
+    }
 
-        g.restore();
+    // The foraging scent, then the food scent, then the home, drawn over each other, as a premultiplied pixel
+    private static int composite(final float foragingAlpha, final float foodAlpha, final boolean home) {
+        if (0.0f == foragingAlpha && 0.0f == foodAlpha && !home) {
+            return 0;
+        }
+        float a = foragingAlpha;
+        float r = (BASE_FORAGING_SCENT_COLOR >> 16 & 0xFF) * foragingAlpha;
+        float g = (BASE_FORAGING_SCENT_COLOR >> 8 & 0xFF) * foragingAlpha;
+        float b = (BASE_FORAGING_SCENT_COLOR & 0xFF) * foragingAlpha;
+        float under = 1.0f - foodAlpha;
+        a = foodAlpha + a * under;
+        r = (BASE_FOOD_CARRYING_SCENT_COLOR >> 16 & 0xFF) * foodAlpha + r * under;
+        g = (BASE_FOOD_CARRYING_SCENT_COLOR >> 8 & 0xFF) * foodAlpha + g * under;
+        b = (BASE_FOOD_CARRYING_SCENT_COLOR & 0xFF) * foodAlpha + b * under;
+        if (home) {
+            final float homeAlpha = (HOME_COLOR >>> 24) / 255.0f;
+            under = 1.0f - homeAlpha;
+            a = homeAlpha + a * under;
+            r = (HOME_COLOR >> 16 & 0xFF) * homeAlpha + r * under;
+            g = (HOME_COLOR >> 8 & 0xFF) * homeAlpha + g * under;
+            b = (HOME_COLOR & 0xFF) * homeAlpha + b * under;
+        }
+        return Math.round(a * 255.0f) << 24 | Math.round(r) << 16 | Math.round(g) << 8 | Math.round(b);
     }
-}
\ No newline at end of file
+}
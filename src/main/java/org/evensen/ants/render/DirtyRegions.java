@@ -0,0 +1,50 @@
+package org.evensen.ants.render;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Rectangles that need to be redrawn. Rectangles that overlap or touch are merged into their bounding box as they
+ * are added, so that no part is redrawn twice.
+ */
+final class DirtyRegions {
+    private final List<int[]> regions = new ArrayList<>();
+
+    @FunctionalInterface
+    interface Visitor {
+        void visit(int x0, int y0, int x1, int y1);
+    }
+
+    /**
+     * Adds the inclusive rectangle {@code [x0, x1] x [y0, y1]}.
+     */
+    void add(final int x0, final int y0, final int x1, final int y1) {
+        int[] region = {x0, y0, x1, y1};
+        boolean merged;
+        do {
+            // Growing may make the region touch ones it didn't before
+            merged = false;
+            for (final Iterator<int[]> i = this.regions.iterator(); i.hasNext(); ) {
+                final int[] r = i.next();
+                if (r[0] <= region[2] + 1 && region[0] <= r[2] + 1 && r[1] <= region[3] + 1 && region[1] <= r[3] + 1) {
+                    region = new int[]{Math.min(r[0], region[0]), Math.min(r[1], region[1]),
+                            Math.max(r[2], region[2]), Math.max(r[3], region[3])};
+                    i.remove();
+                    merged = true;
+                }
+            }
+        } while (merged);
+        this.regions.add(region);
+    }
+
+    void forEach(final Visitor visitor) {
+        for (final int[] r : this.regions) {
+            visitor.visit(r[0], r[1], r[2], r[3]);
+        }
+    }
+
+    void clear() {
+        this.regions.clear();
+    }
+}
@@ -3,149 +3,130 @@ package org.evensen.ants.render;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
-import org.evensen.ants.AntWorld;
+import org.evensen.ants.AntWorldView;
 import org.evensen.ants.Position;
-
+import org.evensen.ants.WorldSnapshot;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Renders the food of a {@code WorldSnapshot}.
+ * <p>
+ * Every food patch is rasterized and filtered once into a sprite of its own, and the sprites are drawn each frame.
+ * Sprites are only made when the food version changes, and only for the patches that are new, i.e. for sources that
+ * have been respawned; the sprites of depleted sources are dropped.
+ * </p>
+ */
 public class FoodRenderer {
     private static final int COLOR_PRIMARY = 0xFFA4DE02;
     private static final int COLOR_HIGHLIGHT = 0xFFE4E100;
     private static final int HIGHLIGHT_WIDTH = 1;
     private static final int HIGHLIGHT_HEIGHT = 2;
-    private static final int COLOR_WEIGHT = 5;
-    private static final int BLUR_WEIGHT = 3;
+    private static final int VOTE_RADIUS = 4;
+    private static final int VOTES = 32;
+
+    private record Sprite(WritableImage image, double x, double y, double width, double height) {
+    }
 
+    private final RasterFilter filter;
+    private Map<WorldSnapshot.FoodPatch, Sprite> sprites;
     private boolean dirtyFlag;
-    private WritableImage cachedImage;
+    private int discreteScaleX;
+    private int discreteScaleY;
+    private long foodVersion;
 
     public FoodRenderer() {
+        this.filter = new RasterFilter(new int[]{0x00000000, COLOR_PRIMARY, COLOR_HIGHLIGHT}, VOTE_RADIUS, VOTES);
+        this.sprites = new HashMap<>();
         this.dirtyFlag = true;
-        this.cachedImage = null;
     }
 
+    /**
+     * Makes the next render make all sprites anew.
+     */
     public void dirty() {
         this.dirtyFlag = true;
     }
 
-    public void render(final GraphicsContext g, final AntWorld world) {
-        if (this.dirtyFlag) {
-            final int discreteScaleX = (int) g.getCanvas().getWidth() / world.getWidth() + 1;
-            final int discreteScaleY = (int) g.getCanvas().getHeight() / world.getHeight() + 1;
-
-            final int width = world.getWidth() * discreteScaleX;
-            final int height = world.getHeight() * discreteScaleY;
-
-            this.cachedImage = new WritableImage(width, height);
-
-            final int[] buffer = new int[width * height];
-            int i = 0;
-            for (int y = 0; y < world.getHeight(); y++) {
-                for (int k = 0; k < discreteScaleY; k++) {
-                    renderScanlineIntoCachedImage(world, buffer, i, discreteScaleX, y);
-                    i += width;
-                }
+    public void render(final GraphicsContext g, final WorldSnapshot world) {
+        final int scaleX = (int) g.getCanvas().getWidth() / world.getWidth() + 1;
+        final int scaleY = (int) g.getCanvas().getHeight() / world.getHeight() + 1;
+        boolean stale = world.getFoodVersion() != this.foodVersion;
+        if (this.dirtyFlag || scaleX != this.discreteScaleX || scaleY != this.discreteScaleY) {
+            this.discreteScaleX = scaleX;
+            this.discreteScaleY = scaleY;
+            this.sprites.clear();
+            this.dirtyFlag = false;
+            stale = true;
+        }
+        if (stale) {
+            final Map<WorldSnapshot.FoodPatch, Sprite> current = new HashMap<>();
+            for (final WorldSnapshot.FoodPatch patch : world.getFoodPatches()) {
+                final Sprite sprite = this.sprites.get(patch);
+                current.put(patch, null != sprite ? sprite : createSprite(world, patch));
             }
+            this.sprites = current;
+            this.foodVersion = world.getFoodVersion();
+        }
 
-            int[] des = buffer;
-            int[] src = new int[buffer.length];
-            for (int w = 0; w < 1; w++) {
-                int[] tmp = des;
-                des = src;
-                src = tmp;
-                int avgR = 0;
-                int avgG = 0;
-                int avgB = 0;
-                for(int j = 0; j < width * height; j++) {
-                    if (src[j] != 0X00000000) {
-                        int acc1 = 0;
-                        int acc2 = 0;
-                        int acc3 = 0;
-                        for (int offsY = -4; offsY < 5; offsY++) {
-                            final int k = j + width * offsY;
-                            if (j > -1 && j < buffer.length) {
-                                for (int offsX = -4; offsX < 5; offsX++) {
-                                    final int l = k + offsX;
-                                    if (l > -1 && l < buffer.length) {
-                                        final int c = src[l];
-                                        switch (c) {
-                                                                          /*- Needs Java 14+ to work:
-                                            case 0x00000000 -> acc1 += 1;
-                                            case COLOR_PRIMARY -> acc2 += 1;
-                                            case COLOR_HIGHLIGHT -> acc3 += 1;
-                                            */
-                                            case 0x00000000:
-                                                acc1 += 1;
-                                                break;
-                                            case COLOR_PRIMARY:
-                                                acc2 += 1;
-                                                break;
-                                            case COLOR_HIGHLIGHT:
-                                                acc3 += 1;
-                                                break;
-                                        }
-                                        avgR += c >> 16 & 0xFF;
-                                        avgG += c >> 8 & 0xFF;
-                                        avgB += c & 0xFF;
-                                    }
-                                }
-                            }
-                        }
-                        avgR /= 64;
-                        avgG /= 64;
-                        avgB /= 64;
-
-                        int c = 0x00000000;
-                        int k = 32;
-                        k -= acc1;
-                        if (k < 1) {
-                            c = 0x00000000;
-                        } else {
-                            k -= acc2;
-                            if (k < 1) {
-                                c = COLOR_PRIMARY;
-                            } else {
-                                k -= acc3;
-                                if (k < 1) {
-                                    c = COLOR_HIGHLIGHT;
-                                }
-                            }
-                        }
+        for (final Sprite sprite : this.sprites.values()) {
+            g.drawImage(sprite.image(), sprite.x(), sprite.y(), sprite.width(), sprite.height());
+        }
+    }
 
-                        if (c != 0x00000000) {
-                            final int r1 = Math.min(255, (((c >> 16) & 0xFF) * COLOR_WEIGHT + avgR * BLUR_WEIGHT)
-                                    / (COLOR_WEIGHT + BLUR_WEIGHT));
-                            final int g1 = Math.min(255, (((c >> 8) & 0xFF) * COLOR_WEIGHT + avgG * BLUR_WEIGHT)
-                                    / (COLOR_WEIGHT + BLUR_WEIGHT));
-                            final int b1 = Math.min(255, (((c & 0xFF) * COLOR_WEIGHT + avgB * BLUR_WEIGHT)
-                                    / (COLOR_WEIGHT + BLUR_WEIGHT)));
-                            des[j] = (c & 0xFF000000) | (r1 << 16) | (g1 << 8) | b1;
-                        }
-                    }
-                }
+    private Sprite createSprite(final AntWorldView world, final WorldSnapshot.FoodPatch patch) {
+        // The same cells as the world gives the source
+        final Position center = patch.center();
+        final int r = patch.radius();
+        final int x0 = Math.max(0, (int) Math.floor(center.getX() - r));
+        final int y0 = Math.max(0, (int) Math.floor(center.getY() - r));
+        final int x1 = Math.min(world.getWidth() - 1, (int) Math.ceil(center.getX() + r));
+        final int y1 = Math.min(world.getHeight() - 1, (int) Math.ceil(center.getY() + r));
+
+        // With a transparent border for the filter to see
+        final int border = this.filter.getReach();
+        final int width = (x1 - x0 + 1) * this.discreteScaleX + 2 * border;
+        final int height = (y1 - y0 + 1) * this.discreteScaleY + 2 * border;
+        final int[] buffer = new int[width * height];
+        for (int y = y0; y <= y1; y++) {
+            for (int k = 0; k < this.discreteScaleY; k++) {
+                final int i = ((y - y0) * this.discreteScaleY + k + border) * width + border;
+                renderScanline(world, patch, buffer, i, this.discreteScaleX, y, x0, x1);
             }
-
-            this.cachedImage.getPixelWriter().setPixels(
-                    0, 0, width, height, PixelFormat.getIntArgbInstance(), des, 0, width);
-
-            this.dirtyFlag = false;
         }
+        final int[] des = new int[buffer.length];
+        this.filter.apply(buffer, des, width, height, 0, 0, width - 1, height - 1);
+
+        final WritableImage image = new WritableImage(width, height);
+        image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), des, 0, width);
+        return new Sprite(image,
+                x0 - (double) border / this.discreteScaleX, y0 - (double) border / this.discreteScaleY,
+                (double) width / this.discreteScaleX, (double) height / this.discreteScaleY);
+    }
 
-        g.drawImage(this.cachedImage, 0.0, 0.0, world.getWidth(), world.getHeight());
+    private static boolean isFood(final AntWorldView world, final WorldSnapshot.FoodPatch patch, final Position p) {
+        return p.isInBounds(world.getWidth(), world.getHeight()) && p.isWithinRadius(patch.center(), patch.radius());
     }
 
-    private void renderScanlineIntoCachedImage(final AntWorld world,
-                                               final int[] buffer,
-                                               final int i,
-                                               final int scale,
-                                               final int y) {
+    private static void renderScanline(final AntWorldView world,
+                                       final WorldSnapshot.FoodPatch patch,
+                                       final int[] buffer,
+                                       final int i,
+                                       final int scale,
+                                       final int y,
+                                       final int x0,
+                                       final int x1) {
         int j = i;
-        for (int x = 0; x < world.getWidth(); x++) {
+        for (int x = x0; x <= x1; x++) {
             for (int k = 0; k < scale; k++) {
                 final Position p = new Position(x, y);
-                if (world.containsFood(p)) {
+                if (isFood(world, patch, p)) {
                     for (int offsetX = 1; offsetX <= HIGHLIGHT_WIDTH; offsetX++) {
                         for (int offsetY = 1; offsetY <= HIGHLIGHT_HEIGHT; offsetY++) {
                             final Position offsetP = p.offset(offsetX, offsetY);
-                            if (offsetP.isInBounds(world.getWidth(), world.getHeight()) && !world.containsFood(offsetP)) {
+                            if (offsetP.isInBounds(world.getWidth(), world.getHeight()) &&
+                                    !isFood(world, patch, offsetP)) {
                                 buffer[j] = COLOR_HIGHLIGHT;
                                 break;
                             } else {
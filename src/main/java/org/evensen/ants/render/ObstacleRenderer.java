@@ -3,9 +3,19 @@ package org.evensen.ants.render;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
+import org.evensen.ants.AntWorldView;
+import org.evensen.ants.MyAntWorld;
+import org.evensen.ants.WorldSnapshot;
 
 /**
- * Renders obstacles provided by an {@code AntWorld}.
+ * Renders obstacles provided by a {@code WorldSnapshot}.
+ * <p>
+ * The obstacles are rasterized at a whole multiple of the world size and filtered into a cached image. When
+ * obstacles change, only the changed regions are rasterized again, together with the cells whose highlights depend
+ * on them, and filtered again with an apron of the filter's radius around them, and only those pixels of the cached
+ * image are replaced. Changes are found from the snapshot's obstacle tile versions, or can be given with
+ * {@code dirty(x0, y0, x1, y1)}.
+ * </p>
  */
 public class ObstacleRenderer {
     private static final int COLOR_PRIMARY = 0xF0202020;
@@ -15,142 +25,122 @@ public class ObstacleRenderer {
     private static final int HIGHLIGHT_HEIGHT = 3;
     private static final int SPECULAR_WIDTH = 2;
     private static final int SPECULAR_HEIGHT = 1;
-    private static final int COLOR_WEIGHT = 5;
-    private static final int BLUR_WEIGHT = 3;
+    private static final int RASTER_REACH = Math.max(Math.max(HIGHLIGHT_WIDTH, HIGHLIGHT_HEIGHT),
+            Math.max(SPECULAR_WIDTH, SPECULAR_HEIGHT)); // How far a cell's looks depend on its neighbours
+    private static final int VOTE_RADIUS = 2;
+    private static final int VOTES = 12;
 
+    private final DirtyRegions regions;
+    private final RasterFilter filter;
     private boolean dirtyFlag;
     private WritableImage cachedImage;
+    private int[] source;
+    private int[] filtered;
+    private int discreteScaleX;
+    private int discreteScaleY;
+    private int worldWidth;
+    private int worldHeight;
+    private long obstacleVersion;
 
     public ObstacleRenderer() {
+        this.regions = new DirtyRegions();
+        this.filter = new RasterFilter(new int[]{0x00000000, COLOR_PRIMARY, COLOR_HIGHLIGHT, COLOR_SPECULAR},
+                VOTE_RADIUS, VOTES);
         this.dirtyFlag = true;
         this.cachedImage = null;
     }
 
+    /**
+     * Makes the next render start over from scratch.
+     */
     public void dirty() {
         this.dirtyFlag = true;
     }
 
-    public void render(final GraphicsContext g, final org.evensen.ants.AntWorld world) {
-        if (this.dirtyFlag) {
-            final int discreteScaleX = (int) g.getCanvas().getWidth() / world.getWidth() + 1;
-            final int discreteScaleY = (int) g.getCanvas().getHeight() / world.getHeight() + 1;
-
-            final int width = world.getWidth() * discreteScaleX;
-            final int height = world.getHeight() * discreteScaleY;
+    /**
+     * Makes the next render redo the cells in the inclusive rectangle {@code [x0, x1] x [y0, y1]}.
+     */
+    public void dirty(final int x0, final int y0, final int x1, final int y1) {
+        this.regions.add(x0, y0, x1, y1);
+    }
 
+    public void render(final GraphicsContext g, final WorldSnapshot world) {
+        final int scaleX = (int) g.getCanvas().getWidth() / world.getWidth() + 1;
+        final int scaleY = (int) g.getCanvas().getHeight() / world.getHeight() + 1;
+        if (this.dirtyFlag || scaleX != this.discreteScaleX || scaleY != this.discreteScaleY ||
+                world.getWidth() != this.worldWidth || world.getHeight() != this.worldHeight) {
+            this.discreteScaleX = scaleX;
+            this.discreteScaleY = scaleY;
+            this.worldWidth = world.getWidth();
+            this.worldHeight = world.getHeight();
+            final int width = this.worldWidth * scaleX;
+            final int height = this.worldHeight * scaleY;
             this.cachedImage = new WritableImage(width, height);
-
-            final int[] buffer = new int[width * height];
-            int i = 0;
-            for (int y = 0; y < world.getHeight(); y++) {
-                for (int k = 0; k < discreteScaleY; k++) {
-                    renderScanlineIntoCachedImage(world, buffer, i, discreteScaleX, y);
-                    i += width;
-                }
-            }
-
-            final int[] src = buffer;
-            final int[] des = new int[src.length];
-
-            for(int j = 0; j < des.length; j++) {
-                if (src[j] != 0X00000000) {
-                    int avgR = 0;
-                    int avgG = 0;
-                    int avgB = 0;
-                    int acc1 = 0;
-                    int acc2 = 0;
-                    int acc3 = 0;
-                    int acc4 = 0;
-                    for (int offsY = -4; offsY < 5; offsY++) {
-                        final int k = j + width * offsY;
-                        if (j > -1 && j < src.length) {
-                            for (int offsX = -4; offsX < 5; offsX++) {
-                                final int l = k + offsX;
-                                if (l > -1 && l < src.length) {
-                                    final int c = src[l];
-                                    final int medianFilter = Math.abs(offsY) < 3 && Math.abs(offsX) < 3 ? 1 : 0;
-                                    switch (c) {
-                                        /* Needs Java 14+ to work:
-                                        case 0x00000000 -> acc1 += medianFilter;
-                                        case COLOR_PRIMARY -> acc2 += medianFilter;
-                                        case COLOR_HIGHLIGHT -> acc3 += medianFilter;
-                                        case COLOR_SPECULAR -> acc4 += medianFilter;
-                                         */
-                                        case 0x00000000:
-                                            acc1 += medianFilter;
-                                            break;
-                                        case COLOR_PRIMARY:
-                                            acc2 += medianFilter;
-                                            break;
-                                        case COLOR_HIGHLIGHT:
-                                            acc3 += medianFilter;
-                                            break;
-                                        case COLOR_SPECULAR:
-                                            acc4 += medianFilter;
-                                            break;
-                                    }
-                                    avgR += c >> 16 & 0xFF;
-                                    avgG += c >> 8 & 0xFF;
-                                    avgB += c & 0xFF;
-                                }
-                            }
-                        }
-                    }
-                    avgR /= 64;
-                    avgG /= 64;
-                    avgB /= 64;
-
-                    int c = 0x00000000;
-                    int k = 12;
-                    k -= acc1;
-                    if (k < 1) {
-                        c = 0x00000000;
-                    } else {
-                        k -= acc2;
-                        if (k < 1) {
-                            c = COLOR_PRIMARY;
-                        } else {
-                            k -= acc3;
-                            if (k < 1) {
-                                c = COLOR_HIGHLIGHT;
-                            } else {
-                                k -= acc4;
-                                if (k < 1) {
-                                    c = COLOR_SPECULAR;
-                                }
-                            }
+            this.source = new int[width * height];
+            this.filtered = new int[width * height];
+            this.regions.clear();
+            redraw(world, 0, 0, this.worldWidth - 1, this.worldHeight - 1);
+            this.dirtyFlag = false;
+        } else {
+            if (world.getObstacleVersion() != this.obstacleVersion) {
+                for (int tx = 0; tx < world.getTileColumns(); tx++) {
+                    for (int ty = 0; ty < world.getTileRows(); ty++) {
+                        if (world.getObstacleTileVersion(tx, ty) > this.obstacleVersion) {
+                            dirty(tx * MyAntWorld.TILE_SIZE, ty * MyAntWorld.TILE_SIZE,
+                                    (tx + 1) * MyAntWorld.TILE_SIZE - 1, (ty + 1) * MyAntWorld.TILE_SIZE - 1);
                         }
                     }
-                    if (c != 0x00000000) {
-                        final int r1 = Math.min(255, (((c >> 16) & 0xFF) * COLOR_WEIGHT + avgR * BLUR_WEIGHT)
-                                / (COLOR_WEIGHT + BLUR_WEIGHT));
-                        final int g1 = Math.min(255, (((c >> 8) & 0xFF) * COLOR_WEIGHT + avgG * BLUR_WEIGHT)
-                                / (COLOR_WEIGHT + BLUR_WEIGHT));
-                        final int b1 = Math.min(255, (((c & 0xFF) * COLOR_WEIGHT + avgB * BLUR_WEIGHT)
-                                / (COLOR_WEIGHT + BLUR_WEIGHT)));
-                        des[j] = (c & 0xFF000000) | (r1 << 16) | (g1 << 8) | b1;
-                    }
                 }
             }
+            this.regions.forEach((x0, y0, x1, y1) -> redraw(world, x0, y0, x1, y1));
+            this.regions.clear();
+        }
+        this.obstacleVersion = world.getObstacleVersion();
 
-            this.cachedImage.getPixelWriter().setPixels(
-                    0, 0, width, height, PixelFormat.getIntArgbInstance(), des, 0, width);
+        g.drawImage(this.cachedImage, 0.0, 0.0, world.getWidth(), world.getHeight());
+    }
 
-            this.dirtyFlag = false;
+    // Rasterizes and filters the given cells again, and patches the cached image with the pixels that changed
+    private void redraw(final AntWorldView world, final int x0, final int y0, final int x1, final int y1) {
+        final int cx0 = Math.max(0, x0 - RASTER_REACH);
+        final int cy0 = Math.max(0, y0 - RASTER_REACH);
+        final int cx1 = Math.min(this.worldWidth - 1, x1 + RASTER_REACH);
+        final int cy1 = Math.min(this.worldHeight - 1, y1 + RASTER_REACH);
+        if (cx0 > cx1 || cy0 > cy1) {
+            return;
+        }
+        final int width = this.worldWidth * this.discreteScaleX;
+        final int height = this.worldHeight * this.discreteScaleY;
+        for (int y = cy0; y <= cy1; y++) {
+            for (int k = 0; k < this.discreteScaleY; k++) {
+                renderScanlineIntoCachedImage(world, this.source, (y * this.discreteScaleY + k) * width,
+                        this.discreteScaleX, y, cx0, cx1);
+            }
         }
 
-        g.drawImage(this.cachedImage, 0.0, 0.0, world.getWidth(), world.getHeight());
+        final int reach = this.filter.getReach();
+        final int px0 = Math.max(0, cx0 * this.discreteScaleX - reach);
+        final int py0 = Math.max(0, cy0 * this.discreteScaleY - reach);
+        final int px1 = Math.min(width - 1, (cx1 + 1) * this.discreteScaleX - 1 + reach);
+        final int py1 = Math.min(height - 1, (cy1 + 1) * this.discreteScaleY - 1 + reach);
+        this.filter.apply(this.source, this.filtered, width, height, px0, py0, px1, py1);
+
+        this.cachedImage.getPixelWriter().setPixels(px0, py0, px1 - px0 + 1, py1 - py0 + 1,
+                PixelFormat.getIntArgbInstance(), this.filtered, py0 * width + px0, width);
     }
 
-    private void renderScanlineIntoCachedImage(final org.evensen.ants.AntWorld world,
+    private void renderScanlineIntoCachedImage(final AntWorldView world,
                                                final int[] buffer,
                                                final int i,
                                                final int scale,
-                                               final int y) {
-        int j = i;
-        for (int x = 0; x < world.getWidth(); x++) {
+                                               final int y,
+                                               final int x0,
+                                               final int x1) {
+        int j = i + x0 * scale;
+        for (int x = x0; x <= x1; x++) {
             for (int k = 0; k < scale; k++) {
                 final org.evensen.ants.Position p = new org.evensen.ants.Position(x, y);
+                buffer[j] = 0x00000000;
                 if (world.isObstacle(p)) {
                     for (int offsetX = 1; offsetX <= HIGHLIGHT_WIDTH; offsetX++) {
                         for (int offsetY = 1; offsetY <= HIGHLIGHT_HEIGHT; offsetY++) {
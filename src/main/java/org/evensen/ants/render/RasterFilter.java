@@ -0,0 +1,207 @@
+package org.evensen.ants.render;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Smooths rasters made of a few flat colours, as the renderers rasterize them. Every pixel that isn't transparent
+ * takes the colour that wins a vote among its neighbours, blended with the average colour around it.
+ * <p>
+ * The vote and the average are both box filters, done as separable running sums: across each row, then down each
+ * column, so a pixel costs the same whatever the radius. The votes for all colours are counted at once, in 8 bit
+ * lanes of a {@code long}, and the red, green and blue sums likewise in 21 bit lanes. The rows are filtered in bands,
+ * in parallel when the area is large enough, each band on scratch buffers that are kept by its thread.
+ * </p>
+ */
+final class RasterFilter {
+    private static final int BLUR_RADIUS = 4;
+    private static final int BLUR_DIVISOR = 64;
+    private static final int COLOR_WEIGHT = 5;
+    private static final int BLUR_WEIGHT = 3;
+    private static final int VOTE_BITS = 8;
+    private static final int MAX_VOTE_RADIUS = 7; // So that a count fits in a lane
+    private static final int CHANNEL_BITS = 21;
+    private static final long CHANNEL_MASK = (1L << CHANNEL_BITS) - 1;
+    private static final int BAND_HEIGHT = 64;
+    private static final int PARALLEL_THRESHOLD = 1 << 16; // Pixels; smaller areas are filtered on the calling thread.
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final int[] palette;
+    private final int voteRadius;
+    private final int votes;
+
+    private static final class Scratch {
+        private long[] rowVotes = new long[0];
+        private long[] rowColours = new long[0];
+        private long[] votes = new long[0];
+        private long[] colours = new long[0];
+
+        void ensureCapacity(final int width, final int rows) {
+            if (this.votes.length < width) {
+                this.votes = new long[width];
+                this.colours = new long[width];
+            }
+            if (this.rowVotes.length < width * rows) {
+                this.rowVotes = new long[width * rows];
+                this.rowColours = new long[width * rows];
+            }
+        }
+    }
+
+    /**
+     * @param palette    The colours of the raster, transparent included, in the order they are counted in the vote.
+     *                   At most eight.
+     * @param voteRadius The vote is over a square of {@code 2 * voteRadius + 1} pixels a side. At most seven.
+     * @param votes      A pixel takes the first colour of the palette at which the running count of votes reaches
+     *                   this, or becomes transparent if none does.
+     */
+    RasterFilter(final int[] palette, final int voteRadius, final int votes) {
+        if (Long.SIZE / VOTE_BITS < palette.length || MAX_VOTE_RADIUS < voteRadius || 0 > voteRadius) {
+            throw new IllegalArgumentException("Can't vote among " + palette.length + " colours with radius " +
+                    voteRadius);
+        }
+        this.palette = palette.clone();
+        this.voteRadius = voteRadius;
+        this.votes = votes;
+    }
+
+    /**
+     * @return How far from a pixel the filter reads, in pixels.
+     */
+    int getReach() {
+        return Math.max(this.voteRadius, BLUR_RADIUS);
+    }
+
+    /**
+     * Filters the pixels of {@code src} in the inclusive rectangle {@code [x0, x1] x [y0, y1]} into the same pixels
+     * of {@code dst}. Both are {@code width * height} rasters stored row by row. Neighbourhoods are clipped to the
+     * raster.
+     */
+    void apply(final int[] src, final int[] dst, final int width, final int height,
+               final int x0, final int y0, final int x1, final int y1) {
+        if (x0 > x1 || y0 > y1) {
+            return;
+        }
+        final IntStream bands = IntStream.range(0, (y1 - y0 + BAND_HEIGHT) / BAND_HEIGHT);
+        (PARALLEL_THRESHOLD <= (x1 - x0 + 1) * (y1 - y0 + 1) ? bands.parallel() : bands).forEach(b -> {
+            final int first = y0 + b * BAND_HEIGHT;
+            filterBand(src, dst, width, height, x0, x1, first, Math.min(y1, first + BAND_HEIGHT - 1), SCRATCH.get());
+        });
+    }
+
+    private void filterBand(final int[] src, final int[] dst, final int width, final int height,
+                            final int x0, final int x1, final int first, final int last, final Scratch scratch) {
+        final int w = x1 - x0 + 1;
+        final int top = Math.max(0, first - getReach());
+        final int bottom = Math.min(height - 1, last + getReach());
+        scratch.ensureCapacity(w, bottom - top + 1);
+
+        // Across the rows of the band and its apron
+        for (int y = top; y <= bottom; y++) {
+            final int row = y * width;
+            final int out = (y - top) * w - x0;
+            long votes = 0;
+            for (int x = Math.max(0, x0 - this.voteRadius); x <= Math.min(width - 1, x0 + this.voteRadius); x++) {
+                votes += vote(src[row + x]);
+            }
+            long colours = 0;
+            for (int x = Math.max(0, x0 - BLUR_RADIUS); x <= Math.min(width - 1, x0 + BLUR_RADIUS); x++) {
+                colours += channels(src[row + x]);
+            }
+            for (int x = x0; x <= x1; x++) {
+                scratch.rowVotes[out + x] = votes;
+                scratch.rowColours[out + x] = colours;
+                if (x + this.voteRadius + 1 < width) {
+                    votes += vote(src[row + x + this.voteRadius + 1]);
+                }
+                if (x - this.voteRadius >= 0) {
+                    votes -= vote(src[row + x - this.voteRadius]);
+                }
+                if (x + BLUR_RADIUS + 1 < width) {
+                    colours += channels(src[row + x + BLUR_RADIUS + 1]);
+                }
+                if (x - BLUR_RADIUS >= 0) {
+                    colours -= channels(src[row + x - BLUR_RADIUS]);
+                }
+            }
+        }
+
+        // Down the columns, each row of sums from the one above it
+        columnSums(scratch.rowVotes, scratch.votes, w, top, bottom, first, this.voteRadius);
+        columnSums(scratch.rowColours, scratch.colours, w, top, bottom, first, BLUR_RADIUS);
+        for (int y = first; y <= last; y++) {
+            if (y > first) {
+                slide(scratch.rowVotes, scratch.votes, w, top, bottom, y, this.voteRadius);
+                slide(scratch.rowColours, scratch.colours, w, top, bottom, y, BLUR_RADIUS);
+            }
+            for (int i = 0, j = y * width + x0; i < w; i++, j++) {
+                dst[j] = 0x00000000 == src[j] ? 0x00000000 : shade(scratch.votes[i], scratch.colours[i]);
+            }
+        }
+    }
+
+    private static void columnSums(final long[] rows, final long[] sums, final int w, final int top,
+                                   final int bottom, final int y, final int radius) {
+        Arrays.fill(sums, 0, w, 0L);
+        for (int r = Math.max(top, y - radius); r <= Math.min(bottom, y + radius); r++) {
+            final int in = (r - top) * w;
+            for (int i = 0; i < w; i++) {
+                sums[i] += rows[in + i];
+            }
+        }
+    }
+
+    // Moves the column sums from row y - 1 to row y
+    private static void slide(final long[] rows, final long[] sums, final int w, final int top,
+                              final int bottom, final int y, final int radius) {
+        if (y + radius <= bottom) {
+            final int in = (y + radius - top) * w;
+            for (int i = 0; i < w; i++) {
+                sums[i] += rows[in + i];
+            }
+        }
+        if (y - radius - 1 >= top) {
+            final int in = (y - radius - 1 - top) * w;
+            for (int i = 0; i < w; i++) {
+                sums[i] -= rows[in + i];
+            }
+        }
+    }
+
+    // The winner of the vote, blended with the average
+    private int shade(final long votes, final long colours) {
+        int c = 0x00000000;
+        int k = this.votes;
+        for (int p = 0; p < this.palette.length; p++) {
+            k -= (int) (votes >>> p * VOTE_BITS) & ((1 << VOTE_BITS) - 1);
+            if (k < 1) {
+                c = this.palette[p];
+                break;
+            }
+        }
+        if (0x00000000 == c) {
+            return 0x00000000;
+        }
+        final int r1 = blend(c >> 16 & 0xFF, (int) (colours >>> 2 * CHANNEL_BITS & CHANNEL_MASK));
+        final int g1 = blend(c >> 8 & 0xFF, (int) (colours >>> CHANNEL_BITS & CHANNEL_MASK));
+        final int b1 = blend(c & 0xFF, (int) (colours & CHANNEL_MASK));
+        return (c & 0xFF000000) | (r1 << 16) | (g1 << 8) | b1;
+    }
+
+    private static int blend(final int colour, final int sum) {
+        return Math.min(255, (colour * COLOR_WEIGHT + sum / BLUR_DIVISOR * BLUR_WEIGHT) / (COLOR_WEIGHT + BLUR_WEIGHT));
+    }
+
+    private long vote(final int c) {
+        for (int p = 0; p < this.palette.length; p++) {
+            if (c == this.palette[p]) {
+                return 1L << p * VOTE_BITS;
+            }
+        }
+        return 0L;
+    }
+
+    private static long channels(final int c) {
+        return (long) (c >> 16 & 0xFF) << 2 * CHANNEL_BITS | (long) (c >> 8 & 0xFF) << CHANNEL_BITS | c & 0xFF;
+    }
+}
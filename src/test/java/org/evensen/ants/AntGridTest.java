@@ -0,0 +1,88 @@
+package org.evensen.ants;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AntGridTest {
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 120;
+
+    private static List<Ant> randomAnts(final Random random, final int count, final float margin) {
+        final List<Ant> ants = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final float x = -margin + random.nextFloat() * (WIDTH + 2 * margin);
+            final float y = -margin + random.nextFloat() * (HEIGHT + 2 * margin);
+            final Ant a = new PellAnt(new Position(x, y), 0.5f);
+            if (0 == random.nextInt(10)) {
+                a.damage(100);
+            }
+            ants.add(a);
+        }
+        return ants;
+    }
+
+    // Compares every query on the grid to a scan over all ants
+    private static void checkAgainstBruteForce(final AntGrid grid, final List<Ant> ants, final Random random) {
+        grid.rebuild(ants);
+        for (int q = 0; q < 500; q++) {
+            final Position center = new Position(random.nextFloat() * WIDTH, random.nextFloat() * HEIGHT);
+            final float radius = random.nextFloat() * 30.0f;
+            final float r2 = radius * radius;
+            final Set<Ant> expected = new HashSet<>();
+            for (final Ant a : ants) {
+                final float dx = a.getPosition().getX() - center.getX();
+                final float dy = a.getPosition().getY() - center.getY();
+                if (!a.isDead() && dx * dx + dy * dy <= r2) {
+                    expected.add(a);
+                }
+            }
+
+            final Set<Ant> found = new HashSet<>();
+            final int visited = grid.forEachNeighbour(center, radius, (ant, dx, dy, distanceSquared) -> {
+                assertTrue(found.add(ant), "visited twice");
+                assertEquals(ant.getPosition().getX() - center.getX(), dx, "dx");
+                assertEquals(ant.getPosition().getY() - center.getY(), dy, "dy");
+                assertEquals(dx * dx + dy * dy, distanceSquared, "distance squared");
+            });
+            assertEquals(expected, found, "neighbours of " + center + " within " + radius);
+            assertEquals(expected.size(), visited, "visited count");
+        }
+    }
+
+    @Test
+    void neighboursMatchBruteForce() {
+        final Random random = new Random(1L);
+        checkAgainstBruteForce(new AntGrid(WIDTH, HEIGHT, 8), randomAnts(random, 3000, 0.0f), random);
+        checkAgainstBruteForce(new AntGrid(WIDTH, HEIGHT, 5), randomAnts(random, 3000, 0.0f), random);
+    }
+
+    @Test
+    void neighboursMatchBruteForceOnPartialGrid() {
+        // Ants outside the covered part go into its border cells
+        final Random random = new Random(2L);
+        checkAgainstBruteForce(new AntGrid(40, 30, 100, 60, 8), randomAnts(random, 3000, 20.0f), random);
+    }
+
+    @Test
+    void countsMatchLiveAnts() {
+        final Random random = new Random(3L);
+        final List<Ant> ants = randomAnts(random, 2000, 0.0f);
+        final AntGrid grid = new AntGrid(WIDTH, HEIGHT, 10);
+        grid.rebuild(ants);
+        final int[] counts = new int[grid.getColumns() * grid.getRows()];
+        grid.copyCounts(counts, new int[counts.length]);
+        int total = 0;
+        for (final int c : counts) {
+            total += c;
+        }
+        assertEquals(ants.stream().filter(a -> !a.isDead()).count(), total);
+    }
+}
@@ -0,0 +1,54 @@
+package org.evensen.ants;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CheckpointTest {
+    private static final int EPOCHS = 300;
+
+    private static SimulationConfig config() {
+        return new SimulationConfig(200, 100, 300, 4, 0.7f, 10000, 5,
+                MyDispersalPolicy.DEFAULT_PHEROMONE_DROPOFF, MyDispersalPolicy.DEFAULT_PHEROMONE_NEIGHBOUR_KEEP,
+                PellAnt.Tuning.DEFAULT, 7L, new MyAntWorld.Terrain(0.2f, 20.0f));
+    }
+
+    @Test
+    void restoredSimulationContinuesWithTheSameDigests() throws Exception {
+        final Simulation original = new Simulation(config());
+        for (int i = 0; i < 40; i++) {
+            original.setObstacle(new Position(10 + i, 50), true);
+            original.step();
+        }
+        final Path path = Files.createTempFile("ants", ".checkpoint");
+        try {
+            final CompletableFuture<Path> written = original.requestCheckpoint(path);
+            while (original.isCheckpointPending()) {
+                original.step();
+            }
+            written.get();
+            final Simulation restored = Simulation.restore(path);
+            assertEquals(original.getEpoch(), restored.getEpoch(), "epoch");
+            assertEquals(original.getAntSteps(), restored.getAntSteps(), "ant steps");
+
+            for (int i = 0; i < EPOCHS; i++) {
+                if (0 == i % 50) {
+                    original.setObstacle(new Position(100, i / 50 + 20), true);
+                    restored.setObstacle(new Position(100, i / 50 + 20), true);
+                }
+                original.step();
+                restored.step();
+                assertEquals(original.getWorldDigest(), restored.getWorldDigest(),
+                        "world digest at epoch " + original.getEpoch());
+                assertEquals(original.getColony().computeDigest(), restored.getColony().computeDigest(),
+                        "colony digest at epoch " + original.getEpoch());
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
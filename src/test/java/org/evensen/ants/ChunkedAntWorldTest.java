@@ -0,0 +1,99 @@
+package org.evensen.ants;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkedAntWorldTest {
+    private static final int SIZE = 16 * ChunkedAntWorld.CHUNK_SIZE;
+
+    private static ChunkedAntWorld createWorld(final Path spill) throws Exception {
+        return new ChunkedAntWorld(SIZE, SIZE, 1.0f, new MyDispersalPolicy(),
+                List.of(new Position(SIZE / 2.0f, SIZE / 2.0f)), 3L, MyAntWorld.Terrain.NONE, 9, spill);
+    }
+
+    // Finds a cell of the food source of the chunk at the origin
+    private static Position findFood(final ChunkedAntWorld world) {
+        for (int x = 0; x < ChunkedAntWorld.CHUNK_SIZE; x++) {
+            for (int y = 0; y < ChunkedAntWorld.CHUNK_SIZE; y++) {
+                if (world.containsFood(new Position(x + 0.5f, y + 0.5f))) {
+                    return new Position(x + 0.5f, y + 0.5f);
+                }
+            }
+        }
+        throw new AssertionError("No food in the first chunk");
+    }
+
+    private static void touchOtherChunks(final ChunkedAntWorld world) {
+        for (int i = 1; i <= 12; i++) {
+            world.isObstacle(new Position(i * ChunkedAntWorld.CHUNK_SIZE + 1.0f, SIZE - 1.0f));
+        }
+    }
+
+    @Test
+    void evictedChunksAreReadBackAsTheyWere() throws Exception {
+        final Path spill = Files.createTempDirectory("ants-spill");
+        try (ChunkedAntWorld world = createWorld(spill)) {
+            final Position food = findFood(world);
+            final Position trail = new Position(3.5f, 60.5f);
+            final Position carcass = new Position(61.5f, 2.5f);
+            final Position wall = new Position(30.5f, 1.5f);
+            world.dropFoodPheromone(trail, 0.25f);
+            world.dropForagingPheromone(trail, 0.125f);
+            world.addDeadAnt(carcass);
+            world.addDeadAnt(carcass);
+            world.setObstacle(wall, true);
+            for (int i = 0; i < 10; i++) {
+                world.pickUpFood(food);
+            }
+            final long[] before = world.getChunkCounts();
+
+            touchOtherChunks(world);
+            assertEquals(9, world.getResidentChunks(), "resident chunks");
+            assertEquals(before[2] + 1, world.getChunkCounts()[2], "chunks written");
+
+            assertEquals(0.25f, world.getFoodStrength(trail), "food pheromone");
+            assertEquals(0.125f, world.getForagingStrength(trail), "foraging pheromone");
+            assertEquals(2.0f, world.getDeadAntCount(carcass), "carcasses");
+            assertTrue(world.isObstacle(wall), "obstacle");
+            assertTrue(world.containsFood(food), "food source");
+            assertEquals(before[1] + 1, world.getChunkCounts()[1], "chunks read");
+        } finally {
+            try (var files = Files.list(spill)) {
+                assertEquals(0L, files.count(), "spilled files left after close");
+            }
+            Files.delete(spill);
+        }
+    }
+
+    @Test
+    void foodSourceStateSurvivesEviction() throws Exception {
+        // Two worlds take the same food from the same source, one of them with an eviction in between
+        final Path spill = Files.createTempDirectory("ants-spill");
+        try (ChunkedAntWorld evicted = createWorld(spill.resolve("evicted"));
+             ChunkedAntWorld resident = createWorld(spill.resolve("resident"))) {
+            final Position food = findFood(evicted);
+            for (int i = 0; i < 30000; i++) {
+                evicted.pickUpFood(food);
+                resident.pickUpFood(food);
+            }
+            touchOtherChunks(evicted);
+            for (int i = 0; i < 30000; i++) {
+                evicted.pickUpFood(food);
+                resident.pickUpFood(food);
+            }
+            // The first source is used up by now and its replacement drawn from the source generation
+            assertEquals(findFood(resident), findFood(evicted), "replacement source");
+        } finally {
+            for (final String name : new String[]{"evicted", "resident"}) {
+                Files.deleteIfExists(spill.resolve(name));
+            }
+            Files.delete(spill);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.evensen.ants;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColonySnapshotTest {
+    private static ColonySnapshot createSnapshot(final AntColony colony) {
+        return new ColonySnapshot(colony.getDensityOriginX(), colony.getDensityOriginY(), colony.getDensityColumns(),
+                colony.getDensityRows(), colony.getDensityCellSize());
+    }
+
+    @Test
+    void repeatedCapturesMatchAFreshCapture() {
+        final MyAntWorld world = new MyAntWorld(120, 80, 3, new MyDispersalPolicy());
+        final AntColony colony = new AntColony(500, 0.5f, world);
+        final ColonySnapshot reused = createSnapshot(colony);
+        for (int epoch = 0; epoch < 160; epoch++) {
+            // Kill a few ants every epoch, so that the graveyard grows at every compaction
+            final List<Ant> ants = colony.getAnts();
+            for (int i = epoch % 7; i < ants.size(); i += 40) {
+                ants.get(i).damage(100);
+            }
+            colony.updateAnts(world);
+            world.dispersePheromones();
+
+            reused.capture(colony);
+            final ColonySnapshot fresh = createSnapshot(colony);
+            fresh.capture(colony);
+            assertEquals(fresh.getAntCount(), reused.getAntCount(), "ant count at epoch " + epoch);
+            for (int i = 0; i < fresh.getAntCount(); i++) {
+                final String ant = "ant " + i + " at epoch " + epoch;
+                assertEquals(fresh.getX(i), reused.getX(i), "x of " + ant);
+                assertEquals(fresh.getY(i), reused.getY(i), "y of " + ant);
+                assertEquals(fresh.getDirection(i), reused.getDirection(i), "direction of " + ant);
+                assertEquals(fresh.isDead(i), reused.isDead(i), "death of " + ant);
+                assertEquals(fresh.hasFood(i), reused.hasFood(i), "food of " + ant);
+            }
+        }
+        assertTrue(!colony.getDeadAnts().isEmpty(), "some ants were buried");
+    }
+}
@@ -0,0 +1,31 @@
+package org.evensen.ants;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CounterRNGTest {
+    @Test
+    void neighbouringSeedsAndStreamsDiffer() {
+        for (long seed = -5; seed <= 5; seed++) {
+            for (long stream = 0; stream < 10; stream++) {
+                final long value = CounterRNG.at(seed, stream, 3, 0);
+                assertTrue(value != CounterRNG.at(seed + 1, stream - 1, 3, 0),
+                        "seed " + seed + ", stream " + stream + " against seed + 1, stream - 1");
+                assertTrue(value != CounterRNG.at(seed, stream + 1, 2, 0),
+                        "seed " + seed + ", stream " + stream + " against stream + 1, step - 1");
+            }
+        }
+    }
+
+    @Test
+    void generatorFollowsTheCounters() {
+        final CounterRNG rng = new CounterRNG(7L, 11L, 5L);
+        for (int draw = 0; draw < 4; draw++) {
+            assertEquals(CounterRNG.at(7L, 11L, 5L, draw), rng.nextLong(), "draw " + draw);
+        }
+        rng.nextStep();
+        assertEquals(CounterRNG.at(7L, 11L, 6L, 0), rng.nextLong(), "first draw of the next step");
+    }
+}
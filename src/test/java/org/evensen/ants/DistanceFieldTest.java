@@ -0,0 +1,106 @@
+package org.evensen.ants;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DistanceFieldTest {
+    private static final int WIDTH = 60;
+    private static final int HEIGHT = 40;
+
+    // Makes random edits to a field, updating it between batches, and compares it to one computed in one go
+    private static void checkAgainstFullRecompute(final float maxDistance, final long seed) {
+        final Random random = new Random(seed);
+        final boolean[][] sources = new boolean[WIDTH][HEIGHT];
+        final boolean[][] blocked = new boolean[WIDTH][HEIGHT];
+        final DistanceField incremental = new DistanceField(WIDTH, HEIGHT, maxDistance);
+        for (int batch = 0; batch < 40; batch++) {
+            for (int edit = 0; edit < 1 + random.nextInt(20); edit++) {
+                final int x = random.nextInt(WIDTH);
+                final int y = random.nextInt(HEIGHT);
+                if (random.nextBoolean()) {
+                    sources[x][y] = random.nextInt(3) != 0;
+                    if (sources[x][y]) {
+                        incremental.addSource(x, y);
+                    } else {
+                        incremental.removeSource(x, y);
+                    }
+                } else {
+                    // Walls, so that paths have to go around them
+                    final boolean block = random.nextInt(4) != 0;
+                    for (int i = 0; i < 1 + random.nextInt(10); i++) {
+                        if (y + i < HEIGHT) {
+                            blocked[x][y + i] = block;
+                            incremental.setBlocked(x, y + i, block);
+                        }
+                    }
+                }
+            }
+            incremental.update();
+
+            final DistanceField full = new DistanceField(WIDTH, HEIGHT, maxDistance);
+            for (int x = 0; x < WIDTH; x++) {
+                for (int y = 0; y < HEIGHT; y++) {
+                    if (sources[x][y]) {
+                        full.addSource(x, y);
+                    }
+                    if (blocked[x][y]) {
+                        full.setBlocked(x, y, true);
+                    }
+                }
+            }
+            full.update();
+            for (int x = 0; x < WIDTH; x++) {
+                for (int y = 0; y < HEIGHT; y++) {
+                    final String cell = "batch " + batch + ", cell <" + x + ", " + y + ">";
+                    assertEquals(full.getDistance(x, y), incremental.getDistance(x, y), "distance at " + cell);
+                    assertEquals(full.getDescentAngle(x, y), incremental.getDescentAngle(x, y), "angle at " + cell);
+                }
+            }
+        }
+    }
+
+    @Test
+    void incrementalUpdatesMatchFullRecompute() {
+        checkAgainstFullRecompute(Float.POSITIVE_INFINITY, 1L);
+        checkAgainstFullRecompute(Float.POSITIVE_INFINITY, 2L);
+    }
+
+    @Test
+    void incrementalUpdatesMatchFullRecomputeWithinMaxDistance() {
+        checkAgainstFullRecompute(12.0f, 3L);
+        checkAgainstFullRecompute(12.0f, 4L);
+    }
+
+    @Test
+    void distancesGoAroundBlockedCells() {
+        final DistanceField field = new DistanceField(WIDTH, HEIGHT, Float.POSITIVE_INFINITY);
+        field.addSource(10, 10);
+        field.update();
+        assertEquals(5.0f, field.getDistance(15, 10), "straight line");
+        for (int y = 0; y < HEIGHT - 1; y++) {
+            field.setBlocked(12, y, true);
+        }
+        field.update();
+        assertEquals(Float.POSITIVE_INFINITY, field.getDistance(12, 5), "blocked cell");
+        assertTrue(field.getDistance(15, 10) > 5.0f, "detour around the wall");
+        field.setBlocked(12, HEIGHT - 1, true);
+        field.update();
+        assertEquals(Float.POSITIVE_INFINITY, field.getDistance(15, 10), "walled off");
+    }
+
+    @Test
+    void queriesDoNotApplyPendingChanges() {
+        final DistanceField field = new DistanceField(WIDTH, HEIGHT, Float.POSITIVE_INFINITY);
+        field.addSource(10, 10);
+        assertEquals(Float.POSITIVE_INFINITY, field.getDistance(15, 10), "before the update");
+        field.update();
+        field.addSource(15, 10);
+        assertEquals(5.0f, field.getDistance(15, 10), "as of the last update");
+        field.update();
+        assertEquals(0.0f, field.getDistance(15, 10), "after the update");
+    }
+}
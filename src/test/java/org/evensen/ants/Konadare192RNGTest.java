@@ -0,0 +1,37 @@
+package org.evensen.ants;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Konadare192RNGTest {
+    private static final long SUBSTREAMS = (1L << 24) - 1;
+
+    private static boolean rejects(final Konadare192RNG rng, final long index) {
+        try {
+            rng.substream(index);
+            return false;
+        } catch (final IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    @Test
+    void substreamsDifferFromTheirParent() {
+        final Konadare192RNG parent = new Konadare192RNG(42L);
+        for (final long index : new long[]{0, 1, 1000, SUBSTREAMS - 1}) {
+            final long first = parent.substream(index).nextLong();
+            assertEquals(first, parent.substream(index).nextLong(), "substream " + index + " is repeatable");
+            assertTrue(first != new Konadare192RNG(42L).nextLong(), "substream " + index + " is not the parent");
+        }
+        assertTrue(rejects(parent, SUBSTREAMS), "the index that comes round to the parent");
+        assertTrue(rejects(parent, -1), "negative index");
+    }
+
+    @Test
+    void splitsEndAfterTheLastSubstream() {
+        assertEquals(SUBSTREAMS, new Konadare192RNG(42L).splits(Long.MAX_VALUE).limit(SUBSTREAMS + 1).count(),
+                "substreams");
+    }
+}
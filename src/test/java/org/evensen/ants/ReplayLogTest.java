@@ -0,0 +1,83 @@
+package org.evensen.ants;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplayLogTest {
+    private static final int EPOCHS = 120;
+    private static final int HAZARDS = 1;
+
+    private static SimulationConfig config() {
+        return new SimulationConfig(160, 100, 200, 3, 0.7f, 2000, 5,
+                MyDispersalPolicy.DEFAULT_PHEROMONE_DROPOFF, MyDispersalPolicy.DEFAULT_PHEROMONE_NEIGHBOUR_KEEP,
+                PellAnt.Tuning.DEFAULT, 11L, new MyAntWorld.Terrain(0.2f, 20.0f));
+    }
+
+    private static void record(final Path path) throws Exception {
+        final Simulation simulation = new Simulation(config());
+        simulation.addHazard(new FixedHazard(new Position(120, 50), 6.0f, 1));
+        simulation.startRecording(path);
+        for (int i = 0; i < EPOCHS; i++) {
+            if (0 == i % 10) {
+                simulation.setObstacle(new Position(60 + i / 10, 30), 0 == i % 20);
+            }
+            simulation.step();
+        }
+        simulation.stopRecording();
+    }
+
+    // Flips a bit of the world digest logged for the given epoch
+    private static void corrupt(final Path path, final long epoch) throws Exception {
+        final byte[] log = Files.readAllBytes(path);
+        final ByteBuffer b = ByteBuffer.wrap(log);
+        b.position(2 * Integer.BYTES + Checkpoint.CONFIG_BYTES + Integer.BYTES + HAZARDS * 4 * Float.BYTES);
+        while (b.hasRemaining()) {
+            final byte type = b.get();
+            final long e = b.getLong();
+            if (1 == type) {
+                b.position(b.position() + 2 * Float.BYTES + 1);
+            } else if (e == epoch) {
+                log[b.position()] ^= 1;
+                Files.write(path, log);
+                return;
+            } else {
+                b.position(b.position() + 2 * Long.BYTES);
+            }
+        }
+        throw new AssertionError("No epoch " + epoch + " in the log");
+    }
+
+    @Test
+    void replayMatchesRecording() throws Exception {
+        final Path path = Files.createTempFile("ants", ".replay");
+        try {
+            record(path);
+            final ReplayLog.Result result = ReplayLog.replay(path);
+            assertTrue(result.matches(), "first mismatch at epoch " + result.firstMismatch());
+            assertEquals(EPOCHS, result.epochs(), "epochs replayed");
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void replayStopsAtFirstMismatch() throws Exception {
+        final Path path = Files.createTempFile("ants", ".replay");
+        try {
+            record(path);
+            corrupt(path, 37);
+            final ReplayLog.Result result = ReplayLog.replay(path);
+            assertTrue(!result.matches(), "mismatch found");
+            assertEquals(37, result.firstMismatch(), "first mismatch");
+            assertEquals(37, result.epochs(), "epochs replayed");
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.evensen.ants;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TrajectoryTest {
+    private static final int EPOCHS = 100;
+    private static final int KEYFRAME_INTERVAL = 16;
+
+    private static void assertFramesEqual(final TrajectoryFrame expected, final TrajectoryFrame actual) {
+        assertEquals(expected.getEpoch(), actual.getEpoch(), "epoch");
+        assertEquals(expected.getAntCount(), actual.getAntCount(), "ant count");
+        for (int id = 0; id < expected.getAntCount(); id++) {
+            final String ant = "ant " + id + " at epoch " + expected.getEpoch();
+            assertEquals(expected.getX(id), actual.getX(id), "x of " + ant);
+            assertEquals(expected.getY(id), actual.getY(id), "y of " + ant);
+            assertEquals(expected.getDirection(id), actual.getDirection(id), "direction of " + ant);
+            assertEquals(expected.getState(id), actual.getState(id), "state of " + ant);
+        }
+    }
+
+    // Records a colony, killing a few ants on the way, and returns the frames it should have recorded
+    private static List<TrajectoryFrame> record(final Path path) throws Exception {
+        final MyAntWorld world = new MyAntWorld(120, 80, 3, new MyDispersalPolicy());
+        final AntColony colony = new AntColony(300, 0.5f, world);
+        final List<TrajectoryFrame> expected = new ArrayList<>();
+        try (TrajectoryRecorder recorder = new TrajectoryRecorder(path, 4, KEYFRAME_INTERVAL)) {
+            colony.setTrajectoryRecorder(recorder);
+            for (int epoch = 1; epoch <= EPOCHS; epoch++) {
+                if (0 == epoch % 10) {
+                    colony.getAnts().get(epoch).damage(100);
+                }
+                colony.updateAnts(world);
+                world.dispersePheromones();
+                final TrajectoryFrame frame = new TrajectoryFrame(300);
+                frame.capture(epoch, colony.getAnts());
+                frame.capture(epoch, colony.getDeadAnts());
+                expected.add(frame);
+            }
+            colony.setTrajectoryRecorder(null);
+        }
+        return expected;
+    }
+
+    @Test
+    void readerStreamsWhatWasRecorded() throws Exception {
+        final Path path = Files.createTempFile("ants", ".trajectory");
+        try {
+            final List<TrajectoryFrame> expected = record(path);
+            try (TrajectoryReader reader = new TrajectoryReader(path)) {
+                assertEquals(1L, reader.getFirstEpoch(), "first epoch");
+                for (final TrajectoryFrame frame : expected) {
+                    assertTrue(reader.next(), "epoch " + frame.getEpoch() + " was recorded");
+                    assertFramesEqual(frame, reader.getFrame());
+                }
+                assertTrue(!reader.next(), "nothing after the last epoch");
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void seekDecodesFromTheKeyframeBefore() throws Exception {
+        final Path path = Files.createTempFile("ants", ".trajectory");
+        try {
+            final List<TrajectoryFrame> expected = record(path);
+            try (TrajectoryReader reader = new TrajectoryReader(path)) {
+                // Keyframes, epochs between them, and backwards as well as forwards
+                for (final int epoch : new int[]{57, 17, 1, 100, 16, 33, 32, 64, 2}) {
+                    assertTrue(reader.seek(epoch), "seek to epoch " + epoch);
+                    assertFramesEqual(expected.get(epoch - 1), reader.getFrame());
+                }
+                assertTrue(reader.next(), "continues after a seek");
+                assertFramesEqual(expected.get(2), reader.getFrame());
+                assertTrue(!reader.seek(0), "before the first epoch");
+                assertTrue(!reader.seek(EPOCHS + 1), "after the last epoch");
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+}
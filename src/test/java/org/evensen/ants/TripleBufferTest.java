@@ -0,0 +1,48 @@
+package org.evensen.ants;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TripleBufferTest {
+    private static final int PUBLICATIONS = 200000;
+
+    @Test
+    void readerSeesTheLatestPublication() {
+        final TripleBuffer<int[]> buffer = new TripleBuffer<>(() -> new int[1]);
+        buffer.getBackBuffer()[0] = 1;
+        buffer.publish();
+        buffer.getBackBuffer()[0] = 2;
+        buffer.publish();
+        assertEquals(2, buffer.acquire()[0], "latest publication");
+        assertEquals(2, buffer.acquire()[0], "nothing new published");
+        assertTrue(buffer.acquire() != buffer.getBackBuffer(), "reader and writer hold different buffers");
+    }
+
+    @Test
+    void readerNeverSeesAHalfWrittenBuffer() throws InterruptedException {
+        // Every publication fills a buffer with one number; a torn read would mix numbers
+        final TripleBuffer<int[]> buffer = new TripleBuffer<>(() -> new int[256]);
+        final Thread writer = new Thread(() -> {
+            for (int n = 1; n <= PUBLICATIONS; n++) {
+                Arrays.fill(buffer.getBackBuffer(), n);
+                buffer.publish();
+            }
+        });
+        writer.start();
+        int last = 0;
+        while (last < PUBLICATIONS) {
+            final int[] front = buffer.acquire();
+            final int n = front[0];
+            for (final int v : front) {
+                assertEquals(n, v, "buffer of publication " + n);
+            }
+            assertTrue(n >= last, "publication " + n + " after " + last);
+            last = n;
+        }
+        writer.join();
+    }
+}
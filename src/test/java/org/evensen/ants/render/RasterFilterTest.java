@@ -0,0 +1,104 @@
+package org.evensen.ants.render;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class RasterFilterTest {
+    private static final int[] PALETTE = {0x00000000, 0xF0202020, 0xF0353030, 0xFF696665};
+
+    // A raster of blobs in the palette's colours
+    private static int[] raster(final int width, final int height, final long seed) {
+        final Random random = new Random(seed);
+        final int[] pixels = new int[width * height];
+        for (int blob = 0; blob < width * height / 200; blob++) {
+            final int cx = random.nextInt(width);
+            final int cy = random.nextInt(height);
+            final int r = 1 + random.nextInt(8);
+            final int colour = PALETTE[1 + random.nextInt(PALETTE.length - 1)];
+            for (int y = Math.max(0, cy - r); y < Math.min(height, cy + r); y++) {
+                for (int x = Math.max(0, cx - r); x < Math.min(width, cx + r); x++) {
+                    pixels[y * width + x] = colour;
+                }
+            }
+        }
+        return pixels;
+    }
+
+    // The filter written out directly, neighbour by neighbour
+    private static int reference(final int[] src, final int width, final int height, final int x, final int y,
+                                 final int voteRadius, final int votes) {
+        if (0x00000000 == src[y * width + x]) {
+            return 0x00000000;
+        }
+        final int[] counts = new int[PALETTE.length];
+        int r = 0;
+        int g = 0;
+        int b = 0;
+        for (int v = Math.max(0, y - 4); v <= Math.min(height - 1, y + 4); v++) {
+            for (int u = Math.max(0, x - 4); u <= Math.min(width - 1, x + 4); u++) {
+                final int c = src[v * width + u];
+                if (Math.abs(u - x) <= voteRadius && Math.abs(v - y) <= voteRadius) {
+                    for (int p = 0; p < PALETTE.length; p++) {
+                        if (c == PALETTE[p]) {
+                            counts[p]++;
+                        }
+                    }
+                }
+                r += c >> 16 & 0xFF;
+                g += c >> 8 & 0xFF;
+                b += c & 0xFF;
+            }
+        }
+        int c = 0x00000000;
+        int k = votes;
+        for (int p = 0; p < PALETTE.length; p++) {
+            k -= counts[p];
+            if (k < 1) {
+                c = PALETTE[p];
+                break;
+            }
+        }
+        if (0x00000000 == c) {
+            return 0x00000000;
+        }
+        final int r1 = Math.min(255, ((c >> 16 & 0xFF) * 5 + r / 64 * 3) / 8);
+        final int g1 = Math.min(255, ((c >> 8 & 0xFF) * 5 + g / 64 * 3) / 8);
+        final int b1 = Math.min(255, ((c & 0xFF) * 5 + b / 64 * 3) / 8);
+        return c & 0xFF000000 | r1 << 16 | g1 << 8 | b1;
+    }
+
+    private static void check(final int width, final int height, final int voteRadius, final int votes,
+                              final int x0, final int y0, final int x1, final int y1) {
+        final int[] src = raster(width, height, width * 31L + height);
+        final int[] expected = new int[src.length];
+        for (int y = y0; y <= y1; y++) {
+            for (int x = x0; x <= x1; x++) {
+                expected[y * width + x] = reference(src, width, height, x, y, voteRadius, votes);
+            }
+        }
+        final int[] actual = new int[src.length];
+        new RasterFilter(PALETTE, voteRadius, votes).apply(src, actual, width, height, x0, y0, x1, y1);
+        assertArrayEquals(expected, actual, width + "x" + height + " in [" + x0 + ", " + x1 + "] x [" + y0 + ", " +
+                y1 + "]");
+    }
+
+    @Test
+    void matchesDirectFilter() {
+        check(150, 140, 2, 12, 0, 0, 149, 139);
+        check(150, 140, 4, 32, 0, 0, 149, 139);
+    }
+
+    @Test
+    void matchesDirectFilterInsideRectangle() {
+        check(150, 140, 2, 12, 17, 60, 90, 131);
+        check(150, 140, 4, 32, 0, 3, 5, 139);
+    }
+
+    @Test
+    void matchesDirectFilterInParallel() {
+        check(400, 300, 2, 12, 0, 0, 399, 299);
+    }
+}